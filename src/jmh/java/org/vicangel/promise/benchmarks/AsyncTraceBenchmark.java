@@ -0,0 +1,78 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.vicangel.promise.AsyncTrace;
+import org.vicangel.promise.DirectScheduler;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.ValueOrError;
+
+/**
+ * Cost of async traces per sampling rate, 0 meaning off, on then() chains built on a pending source, so every
+ * link is a promise of its own. The failing chain also pays for attaching the trace to the rejection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncTraceBenchmark {
+
+  @Param({"0", "1", "16", "256"})
+  int sampleEvery;
+
+  @Param({"100"})
+  int depth;
+
+  @Setup
+  public void setUp() {
+    if (sampleEvery == 0) {
+      AsyncTrace.disable();
+    } else {
+      AsyncTrace.enable(sampleEvery);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    AsyncTrace.disable();
+  }
+
+  @Benchmark
+  public Integer fulfilledChain() {
+    final Deferred<Integer> source = new Deferred<>(DirectScheduler.INSTANCE);
+    Promise<Integer> tail = source.promise;
+    for (int i = 0; i < depth; i++) {
+      tail = tail.then(AsyncTraceBenchmark::increment);
+    }
+    source.resolve(0);
+    return tail.get();
+  }
+
+  @Benchmark
+  public ValueOrError<Integer> rejectedChain() {
+    final Deferred<Integer> source = new Deferred<>(DirectScheduler.INSTANCE);
+    Promise<Integer> tail = source.promise;
+    for (int i = 0; i < depth; i++) {
+      tail = tail.then(AsyncTraceBenchmark::increment);
+    }
+    tail = tail.then(AsyncTraceBenchmark::fail);
+    source.resolve(0);
+    return tail.getValueOrError();
+  }
+
+  private static Integer increment(final Integer value) {
+    return value + 1;
+  }
+
+  private static Integer fail(final Integer value) {
+    throw new IllegalStateException("Failed at " + value);
+  }
+}
@@ -0,0 +1,39 @@
+package org.vicangel.promise.benchmarks;
+
+import org.vicangel.promise.DirectScheduler;
+import org.vicangel.promise.PromiseScheduler;
+import org.vicangel.promise.PromiseSchedulers;
+import org.vicangel.promise.TrampolineScheduler;
+
+/**
+ * Maps the {@code scheduler} benchmark parameter to a scheduler. "direct" measures the engine alone, "trampoline"
+ * adds the stack-safe inline queue and "pool" the hand-off to the common worker pool that promises use by default.
+ */
+final class BenchmarkSchedulers {
+
+  private BenchmarkSchedulers() {
+
+  }
+
+  static PromiseScheduler named(final String name) {
+    switch (name) {
+      case "direct":
+        return DirectScheduler.INSTANCE;
+      case "trampoline":
+        return TrampolineScheduler.INSTANCE;
+      case "pool":
+        return PromiseSchedulers.commonPool();
+      default:
+        throw new IllegalArgumentException("Unknown scheduler: " + name);
+    }
+  }
+
+  /**
+   * Also makes the scheduler the default one, which the combinators use for the promise they return.
+   */
+  static PromiseScheduler install(final String name) {
+    final PromiseScheduler scheduler = named(name);
+    PromiseSchedulers.setDefault(scheduler);
+    return scheduler;
+  }
+}
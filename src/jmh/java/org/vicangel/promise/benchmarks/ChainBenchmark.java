@@ -0,0 +1,61 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+
+/**
+ * Long linear then() chains, built either on a pending source that is resolved once the whole chain is in place,
+ * or on a source that has already settled, so every link is resolved as soon as it is added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChainBenchmark {
+
+  @Param({"10", "1000"})
+  int depth;
+
+  @Param({"direct", "trampoline", "pool"})
+  String scheduler;
+
+  private PromiseScheduler promiseScheduler;
+
+  @Setup
+  public void setUp() {
+    promiseScheduler = BenchmarkSchedulers.install(scheduler);
+  }
+
+  @Benchmark
+  public Integer chainOnPendingSource() {
+    final Deferred<Integer> source = new Deferred<>(promiseScheduler);
+    Promise<Integer> tail = source.promise;
+    for (int i = 0; i < depth; i++) {
+      tail = tail.then(ChainBenchmark::increment);
+    }
+    source.resolve(0);
+    return tail.get();
+  }
+
+  @Benchmark
+  public Integer chainOnSettledSource() {
+    Promise<Integer> tail = new Promise<>((resolve, reject) -> resolve.accept(0), promiseScheduler);
+    for (int i = 0; i < depth; i++) {
+      tail = tail.then(ChainBenchmark::increment);
+    }
+    return tail.get();
+  }
+
+  private static Integer increment(final Integer value) {
+    return value + 1;
+  }
+}
@@ -0,0 +1,129 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+import org.vicangel.promise.PromiseSupport;
+import org.vicangel.promise.ValueOrError;
+
+/**
+ * all, allSettled, race and any over {@code size} inputs. The "settled" variants combine inputs that fulfilled
+ * during setup; the "pending" variants create their inputs, combine them and then settle them one by one, which is
+ * the path where the combinators have to wait.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CombinatorBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  @Param({"direct", "pool"})
+  String scheduler;
+
+  private PromiseScheduler promiseScheduler;
+  private List<Promise<?>> settledInputs;
+
+  @Setup
+  public void setUp() {
+    promiseScheduler = BenchmarkSchedulers.install(scheduler);
+    settledInputs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final int value = i;
+      settledInputs.add(new Promise<Integer>((resolve, reject) -> resolve.accept(value), promiseScheduler));
+    }
+  }
+
+  @Benchmark
+  public int allSettledInputs() {
+    return PromiseSupport.all(settledInputs).get().size();
+  }
+
+  @Benchmark
+  public int allSettledOnSettledInputs() {
+    return PromiseSupport.allSettled(settledInputs).get().size();
+  }
+
+  @Benchmark
+  public ValueOrError<?> raceSettledInputs() {
+    return PromiseSupport.race(settledInputs).get();
+  }
+
+  @Benchmark
+  public Object anySettledInputs() {
+    return PromiseSupport.any(settledInputs).get();
+  }
+
+  @Benchmark
+  public int allPendingInputs() {
+    final List<Deferred<Integer>> deferreds = pendingInputs();
+    final Promise<List<?>> result = PromiseSupport.all(promisesOf(deferreds));
+    resolveAll(deferreds);
+    return result.get().size();
+  }
+
+  @Benchmark
+  public int allSettledOnPendingInputs() {
+    final List<Deferred<Integer>> deferreds = pendingInputs();
+    final Promise<List<ValueOrError<?>>> result = PromiseSupport.allSettled(promisesOf(deferreds));
+    resolveAll(deferreds);
+    return result.get().size();
+  }
+
+  @Benchmark
+  public ValueOrError<?> racePendingInputs() {
+    final List<Deferred<Integer>> deferreds = pendingInputs();
+    final Promise<ValueOrError<?>> result = PromiseSupport.race(promisesOf(deferreds));
+    resolveAll(deferreds);
+    return result.get();
+  }
+
+  /**
+   * Every input but the last rejects, so any() has to look at all of them before it fulfills.
+   */
+  @Benchmark
+  public Object anyPendingInputs() {
+    final List<Deferred<Integer>> deferreds = pendingInputs();
+    final Promise<?> result = PromiseSupport.any(promisesOf(deferreds));
+    final IllegalStateException reason = new IllegalStateException("rejected input");
+    for (int i = 0; i < size - 1; i++) {
+      deferreds.get(i).reject(reason);
+    }
+    deferreds.get(size - 1).resolve(size - 1);
+    return result.get();
+  }
+
+  private List<Deferred<Integer>> pendingInputs() {
+    final List<Deferred<Integer>> deferreds = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      deferreds.add(new Deferred<>(promiseScheduler));
+    }
+    return deferreds;
+  }
+
+  private static List<Promise<?>> promisesOf(final List<Deferred<Integer>> deferreds) {
+    final List<Promise<?>> promises = new ArrayList<>(deferreds.size());
+    for (final Deferred<Integer> deferred : deferreds) {
+      promises.add(deferred.promise);
+    }
+    return promises;
+  }
+
+  private static void resolveAll(final List<Deferred<Integer>> deferreds) {
+    for (int i = 0; i < deferreds.size(); i++) {
+      deferreds.get(i).resolve(i);
+    }
+  }
+}
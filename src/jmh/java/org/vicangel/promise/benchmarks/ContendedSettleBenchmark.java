@@ -0,0 +1,87 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+
+/**
+ * Several producers race to settle the same promises while another thread keeps registering reactions on them.
+ * Every thread of the group walks the same {@link #ROUND} fresh promises once per iteration, so each promise sees
+ * two resolvers, one rejecter and one then() in flight at once: one CAS wins, the others take the losing path,
+ * and registrations contend with the drain.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = ContendedSettleBenchmark.ROUND)
+@Measurement(iterations = 10, batchSize = ContendedSettleBenchmark.ROUND)
+public class ContendedSettleBenchmark {
+
+  static final int ROUND = 1 << 16;
+  private static final IllegalStateException REASON = new IllegalStateException("rejected by benchmark");
+
+  @Param({"direct", "pool"})
+  String scheduler;
+
+  private Deferred<Integer>[] deferreds;
+
+  @Setup(Level.Iteration)
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    final PromiseScheduler promiseScheduler = BenchmarkSchedulers.install(scheduler);
+    deferreds = new Deferred[ROUND];
+    for (int i = 0; i < ROUND; i++) {
+      deferreds[i] = new Deferred<>(promiseScheduler);
+    }
+  }
+
+  @Benchmark
+  @Group("settle")
+  @GroupThreads(2)
+  public void resolve(final Cursor cursor) {
+    deferreds[cursor.next()].resolve(cursor.index);
+  }
+
+  @Benchmark
+  @Group("settle")
+  @GroupThreads(1)
+  public void reject(final Cursor cursor) {
+    deferreds[cursor.next()].reject(REASON);
+  }
+
+  @Benchmark
+  @Group("settle")
+  @GroupThreads(1)
+  public Promise<Integer> register(final Cursor cursor) {
+    return deferreds[cursor.next()].promise.then(value -> value);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    int index;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      index = 0;
+    }
+
+    int next() {
+      return index++ & (ROUND - 1);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.function.Consumer;
+
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+
+/**
+ * A pending promise together with the resolve and reject functions handed to its executor, so that a benchmark
+ * can settle it from outside at the moment it wants to measure.
+ */
+final class Deferred<V> {
+
+  final Promise<V> promise;
+  private Consumer<V> resolve;
+  private Consumer<Throwable> reject;
+
+  Deferred(final PromiseScheduler scheduler) {
+    this.promise = new Promise<>((res, rej) -> {
+      resolve = res;
+      reject = rej;
+    }, scheduler);
+  }
+
+  void resolve(final V value) {
+    resolve.accept(value);
+  }
+
+  void reject(final Throwable reason) {
+    reject.accept(reason);
+  }
+}
@@ -0,0 +1,69 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+import org.vicangel.promise.PromiseSupport;
+
+/**
+ * One pending source with {@code width} dependents registered on it before it resolves, which exercises the
+ * reaction stack drained on settle. The fan-in variant joins the dependents again through all().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FanOutFanInBenchmark {
+
+  @Param({"10", "1000"})
+  int width;
+
+  @Param({"direct", "pool"})
+  String scheduler;
+
+  private PromiseScheduler promiseScheduler;
+
+  @Setup
+  public void setUp() {
+    promiseScheduler = BenchmarkSchedulers.install(scheduler);
+  }
+
+  @Benchmark
+  public long fanOut() {
+    final Deferred<Integer> source = new Deferred<>(promiseScheduler);
+    final List<Promise<Integer>> leaves = new ArrayList<>(width);
+    for (int i = 0; i < width; i++) {
+      final int offset = i;
+      leaves.add(source.promise.then(value -> value + offset));
+    }
+    source.resolve(1);
+    long sum = 0;
+    for (final Promise<Integer> leaf : leaves) {
+      sum += leaf.get();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int fanOutFanIn() {
+    final Deferred<Integer> source = new Deferred<>(promiseScheduler);
+    final List<Promise<?>> leaves = new ArrayList<>(width);
+    for (int i = 0; i < width; i++) {
+      final int offset = i;
+      leaves.add(source.promise.then(value -> value + offset));
+    }
+    final Promise<List<?>> joined = PromiseSupport.all(leaves);
+    source.resolve(1);
+    return joined.get().size();
+  }
+}
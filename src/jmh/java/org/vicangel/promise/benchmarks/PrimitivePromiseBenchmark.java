@@ -0,0 +1,75 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.vicangel.promise.IntPromise;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+import org.vicangel.promise.PromiseSupport;
+
+/**
+ * The numeric pipeline of {@code Main}, a length followed by arithmetic, aggregated over {@code size} inputs:
+ * once through boxed promises and all(), once through IntPromise and allInt(). Compare gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrimitivePromiseBenchmark {
+
+  @Param({"10", "1000"})
+  int size;
+
+  @Param({"direct", "pool"})
+  String scheduler;
+
+  private PromiseScheduler promiseScheduler;
+
+  @Setup
+  public void setUp() {
+    promiseScheduler = BenchmarkSchedulers.install(scheduler);
+  }
+
+  @Benchmark
+  public long boxed() {
+    final Deferred<String> source = new Deferred<>(promiseScheduler);
+    final List<Promise<?>> lengths = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final int offset = i;
+      lengths.add(source.promise.then(String::length).then(length -> length + offset));
+    }
+    final Promise<List<?>> all = PromiseSupport.all(lengths);
+    source.resolve("Resolved");
+    long sum = 0;
+    for (Object length : all.get()) {
+      sum += (Integer) length;
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long primitive() {
+    final Deferred<String> source = new Deferred<>(promiseScheduler);
+    final List<IntPromise> lengths = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final int offset = i;
+      lengths.add(source.promise.thenToInt(String::length).then(length -> length + offset));
+    }
+    final Promise<int[]> all = PromiseSupport.allInt(lengths);
+    source.resolve("Resolved");
+    long sum = 0;
+    for (int length : all.get()) {
+      sum += length;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,110 @@
+package org.vicangel.promise.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.vicangel.promise.Promise;
+import org.vicangel.promise.PromiseScheduler;
+import org.vicangel.promise.PromiseSupport;
+import org.vicangel.promise.ValueOrError;
+
+/**
+ * Single operations on promises that have already settled, the common case once a value is cached, next to the
+ * same registrations on a pending promise. Every benchmark waits for the promise it creates, so work handed to a
+ * worker pool cannot pile up between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SettledPromiseBenchmark {
+
+  private static final IllegalStateException REASON = new IllegalStateException("rejected by benchmark");
+
+  @Param({"direct", "pool"})
+  String scheduler;
+
+  private PromiseScheduler promiseScheduler;
+  private Promise<Integer> fulfilled;
+  private Promise<Integer> rejected;
+
+  @Setup
+  public void setUp() {
+    promiseScheduler = BenchmarkSchedulers.install(scheduler);
+    fulfilled = new Promise<>((resolve, reject) -> resolve.accept(42), promiseScheduler);
+    rejected = new Promise<>((resolve, reject) -> reject.accept(REASON), promiseScheduler);
+  }
+
+  @Benchmark
+  public Promise<Integer> resolveValue() {
+    return PromiseSupport.resolve(42);
+  }
+
+  @Benchmark
+  public Promise<Boolean> resolveConstant() {
+    return PromiseSupport.resolve(Boolean.TRUE);
+  }
+
+  /**
+   * A cache hit: a chain of then() on a constant. With the direct scheduler every link runs inline, so the only
+   * allocations left are the promises the chain returns.
+   */
+  @Benchmark
+  public Boolean settledChain() {
+    return PromiseSupport.resolve(Boolean.TRUE)
+      .then(SettledPromiseBenchmark::negate)
+      .then(SettledPromiseBenchmark::negate)
+      .then(SettledPromiseBenchmark::negate)
+      .get();
+  }
+
+  @Benchmark
+  public Integer getSettled() {
+    return fulfilled.get();
+  }
+
+  @Benchmark
+  public Integer thenOnSettled() {
+    return fulfilled.then(value -> value + 1).get();
+  }
+
+  @Benchmark
+  public ValueOrError<?> catchErrorOnSettled() {
+    return rejected.catchError(reason -> {
+    }).getValueOrError();
+  }
+
+  @Benchmark
+  public ValueOrError<?> catchErrorOnPending() {
+    final Deferred<Integer> pending = new Deferred<>(promiseScheduler);
+    final Promise<?> registered = pending.promise.catchError(reason -> {
+    });
+    pending.reject(REASON);
+    return registered.getValueOrError();
+  }
+
+  @Benchmark
+  public ValueOrError<Integer> andFinallyOnSettled() {
+    return fulfilled.andFinally(outcome -> {
+    }).getValueOrError();
+  }
+
+  @Benchmark
+  public ValueOrError<Integer> andFinallyOnPending() {
+    final Deferred<Integer> pending = new Deferred<>(promiseScheduler);
+    final Promise<Integer> registered = pending.promise.andFinally(outcome -> {
+    });
+    pending.resolve(42);
+    return registered.getValueOrError();
+  }
+
+  private static Boolean negate(final Boolean value) {
+    return !value;
+  }
+}
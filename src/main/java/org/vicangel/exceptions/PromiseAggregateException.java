@@ -0,0 +1,30 @@
+package org.vicangel.exceptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rejection reason of {@code PromiseSupport.any} when every input promise rejects, in the spirit of
+ * Javascript's AggregateError. The causes are kept in input order and are also attached as suppressed exceptions.
+ *
+ * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/AggregateError">...</a>
+ */
+public class PromiseAggregateException extends RuntimeException {
+
+  private final List<Throwable> errors;
+
+  public PromiseAggregateException(List<Throwable> errors) {
+    super("All promises were rejected");
+    this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    for (Throwable error : errors) {
+      if (error != null) {
+        addSuppressed(error);
+      }
+    }
+  }
+
+  public List<Throwable> getErrors() {
+    return errors;
+  }
+}
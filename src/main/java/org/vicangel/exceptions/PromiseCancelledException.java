@@ -0,0 +1,12 @@
+package org.vicangel.exceptions;
+
+/**
+ * Outcome of a promise that was cancelled while still pending. It carries no stack trace, so shedding load
+ * by cancelling a large number of promises stays cheap.
+ */
+public class PromiseCancelledException extends RuntimeException {
+
+  public PromiseCancelledException() {
+    super("Promise was cancelled", null, false, false);
+  }
+}
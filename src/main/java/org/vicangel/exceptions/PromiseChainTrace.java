@@ -0,0 +1,22 @@
+package org.vicangel.exceptions;
+
+/**
+ * Attached as a suppressed exception to the reason of a rejected promise while async traces are enabled. Its
+ * stack trace is not where it was created but the sampled creation sites of the promise chain that was rejected,
+ * most recent first.
+ */
+public class PromiseChainTrace extends RuntimeException {
+
+  public PromiseChainTrace(StackTraceElement[] sites) {
+    super("Promise chain created at", null, false, true);
+    setStackTrace(sites);
+  }
+
+  /**
+   * The stack of the creating thread is meaningless here, and walking it would cost as much as the trace saves.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
@@ -0,0 +1,14 @@
+package org.vicangel.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Thrown by a timed get, and used as the rejection reason of a promise returned by timeout(), when the deadline
+ * passes before the promise settles.
+ */
+public class PromiseTimeoutException extends RuntimeException {
+
+  public PromiseTimeoutException(Duration timeout) {
+    super("Promise did not settle within " + timeout);
+  }
+}
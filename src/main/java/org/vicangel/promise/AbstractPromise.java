@@ -0,0 +1,467 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.vicangel.exceptions.PromiseCancelledException;
+
+import static org.vicangel.promise.Status.CANCELLED;
+import static org.vicangel.promise.Status.FULFILLED;
+import static org.vicangel.promise.Status.PENDING;
+
+/**
+ * Settlement machinery shared by {@link Promise} and its primitive specialisations {@link IntPromise},
+ * {@link LongPromise} and {@link DoublePromise}: the status claimed with a single CAS, the lock-free reaction
+ * stack, dependents counting and cancellation. Subclasses only decide how the fulfillment value is stored, so
+ * a primitive result never has to be boxed.
+ */
+public abstract class AbstractPromise extends PromiseSupport {
+
+  private static final Logger LOGGER = Logger.getLogger(AbstractPromise.class.getName());
+  private static final VarHandle STATUS;
+  private static final VarHandle REACTIONS;
+  private static final VarHandle DEPENDENTS;
+  private static final VarHandle STARTER;
+  private static final VarHandle ABORT_HOOK;
+  /**
+   * Marks the reaction stack as drained: reactions registered from now on are scheduled right away.
+   */
+  private static final PromiseReaction SETTLED = new PromiseReaction() {
+    @Override
+    public void run() {
+      throw new IllegalStateException("The settled marker is not a runnable reaction");
+    }
+  };
+  final PromiseScheduler scheduler;
+  /**
+   * Claimed with a single CAS out of PENDING by the settling thread. The outcome it guards is only
+   * published once the reaction stack has been swapped for SETTLED.
+   */
+  private volatile Status status = PENDING;
+  /**
+   * The rejection reason, or the cancellation exception. Written before the reaction stack is swapped.
+   */
+  Throwable cause;
+  /**
+   * Treiber stack of the reactions registered while pending, most recent first. Swapped for SETTLED exactly once.
+   */
+  private volatile PromiseReaction reactions;
+  /**
+   * Reactions, combinator slots and blocked getters still interested in this promise. When the last one is
+   * cancelled while this promise is pending, this promise is cancelled too.
+   */
+  private volatile int dependents;
+  /**
+   * The executor settling this promise, kept while pending for diagnostics.
+   */
+  PromiseExecutor<?> executor;
+  /**
+   * The abort hook of the run of that executor, taken by whichever of cancel() and the starting thread comes last.
+   */
+  private volatile Runnable abortHook;
+  /**
+   * Kept while pending so that cancel() can propagate to the sources of a derived promise.
+   */
+  private Detachable upstream;
+  /**
+   * The work a lazy promise defers until something depends on it: running its executor, or attaching to the
+   * source of a lazily derived promise. Taken exactly once by the first registration, or dropped on cancellation.
+   */
+  private volatile Runnable starter;
+  /**
+   * The sampled creation sites leading to this promise; always null while {@link AsyncTrace} is off.
+   */
+  AsyncTrace.Site site;
+
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      STATUS = lookup.findVarHandle(AbstractPromise.class, "status", Status.class);
+      REACTIONS = lookup.findVarHandle(AbstractPromise.class, "reactions", PromiseReaction.class);
+      DEPENDENTS = lookup.findVarHandle(AbstractPromise.class, "dependents", int.class);
+      STARTER = lookup.findVarHandle(AbstractPromise.class, "starter", Runnable.class);
+      ABORT_HOOK = lookup.findVarHandle(AbstractPromise.class, "abortHook", Runnable.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  AbstractPromise(final PromiseScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Cancels this promise if it is still pending. The abort hook of its executor run is called, reactions that have not run
+   * yet are dropped and every promise derived from it is cancelled as well. Cancellation also travels upstream:
+   * a source left pending without any other dependent is cancelled in turn, so nobody keeps computing
+   * a result nobody will read.
+   *
+   * @return whether this call cancelled the promise; false if it had already settled
+   */
+  public boolean cancel() {
+    if (!STATUS.compareAndSet(this, PENDING, CANCELLED)) {
+      return false;
+    }
+    AbstractPromise abandoned = cancelled();
+    while (abandoned != null) {
+      abandoned = STATUS.compareAndSet(abandoned, PENDING, CANCELLED) ? abandoned.cancelled() : null;
+    }
+    return true;
+  }
+
+  public boolean isCancelled() {
+    return status == CANCELLED;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public PromiseScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * @return the outcome of a promise that has settled, boxed; used by the generic combinators
+   */
+  abstract ValueOrError<?> outcome();
+
+  /**
+   * Settles this promise with the outcome of a source of the same kind that has already settled.
+   */
+  abstract void settleLike(AbstractPromise source);
+
+  /**
+   * Fulfills this promise once a catchError() handler has dealt with the rejection of its source: with null, or
+   * with zero for a primitive promise.
+   */
+  abstract void recovered();
+
+  /**
+   * Completes a cancellation once the CAS out of PENDING has been won. Walking upstream is left to the caller's
+   * loop, so cancelling the tail of a long chain does not recurse once per link.
+   *
+   * @return the source this promise was derived from, if that source now has no dependents left
+   */
+  private AbstractPromise cancelled() {
+    this.cause = new PromiseCancelledException();
+    starter = null;
+    PromiseInstrumentation.settled(this, CANCELLED);
+    final Runnable abort = (Runnable) ABORT_HOOK.getAndSet(this, null);
+    final Detachable source = upstream;
+    executor = null;
+    upstream = null;
+    drainReactions();
+    if (abort != null) {
+      abort.run();
+    }
+    return source != null ? source.detach() : null;
+  }
+
+  /**
+   * Claims this promise for the given outcome. On success the caller stores the outcome and then calls
+   * {@link #publish(Status)}.
+   */
+  final boolean claim(final Status outcome) {
+    return STATUS.compareAndSet(this, PENDING, outcome);
+  }
+
+  final void publish(final Status outcome) {
+    executor = null;
+    abortHook = null;
+    upstream = null;
+    PromiseInstrumentation.settled(this, outcome);
+    drainReactions();
+  }
+
+  /**
+   * For promises created already fulfilled, once the value has been stored: they never hold reactions.
+   */
+  final void settledAtCreation() {
+    this.reactions = SETTLED;
+    this.status = FULFILLED;
+  }
+
+  protected void fullFillReject(final Throwable reason) {
+    if (claim(Status.REJECTED)) {
+      this.cause = reason;
+      if (site != null) {
+        AsyncTrace.attach(reason, site);
+      }
+      publish(Status.REJECTED);
+    }
+  }
+
+  /**
+   * Keeps the abort hook of the executor run that settles this promise. A cancellation that landed while the
+   * executor was still starting aborts the run right away.
+   */
+  final void started(final Runnable abort) {
+    abortHook = abort;
+    if (abort != null && status != PENDING && ABORT_HOOK.compareAndSet(this, abort, null) && status == CANCELLED) {
+      abort.run();
+    }
+  }
+
+  /**
+   * Makes a pending promise lazy: the given work runs once something registers on it, and never if it is
+   * cancelled first.
+   */
+  final void deferStart(final Runnable deferred) {
+    this.starter = deferred;
+  }
+
+  /**
+   * Runs the deferred work of a lazy promise, unless it has already run or been dropped.
+   */
+  final void triggerStart() {
+    final Runnable deferred = starter;
+    if (deferred != null && STARTER.compareAndSet(this, deferred, null)) {
+      deferred.run();
+    }
+  }
+
+  /**
+   * Marks the upstream link of a promise created by the caller, such as a combinator result, before any
+   * of its inputs can settle it.
+   */
+  void derivedFrom(final Detachable source) {
+    this.upstream = source;
+  }
+
+  /**
+   * Counts a reaction as a dependent of this promise and registers it. Dependents only matter while pending,
+   * so a settled promise, possibly a shared constant, is not written to.
+   */
+  void addDependent(final PromiseReaction reaction) {
+    if (reactions != SETTLED) {
+      DEPENDENTS.getAndAdd(this, 1);
+    }
+    register(reaction);
+  }
+
+  /**
+   * Called when a dependent has been cancelled.
+   *
+   * @return whether this promise is still pending and was left without dependents, so it should be cancelled
+   */
+  boolean releaseDependent() {
+    final boolean abandoned = (int) DEPENDENTS.getAndAdd(this, -1) == 1 && status == PENDING;
+    purgeReactions();
+    return abandoned;
+  }
+
+  /**
+   * Whether the outcome can be read: the status leaves PENDING before the outcome is stored, and only the swap of
+   * the reaction stack publishes both.
+   */
+  final boolean isPublished() {
+    return reactions == SETTLED;
+  }
+
+  /**
+   * Whether a continuation registered now would be run on this thread by the scheduler anyway, in which case
+   * it is applied directly and no reaction is created.
+   */
+  final boolean runsInline() {
+    return isPublished() && scheduler.allowsInline();
+  }
+
+  final <R extends PromiseReaction & Detachable> void derive(final AbstractPromise dest, final R reaction) {
+    dest.upstream = reaction;
+    PromiseInstrumentation.dependency(this, dest);
+    addDependent(reaction);
+  }
+
+  /**
+   * Hands the reaction to the scheduler right away if this promise has settled, otherwise pushes it on the
+   * reaction stack for drainReactions. The first registration on a lazy promise starts it.
+   */
+  void register(final PromiseReaction reaction) {
+    if (starter != null) {
+      triggerStart();
+    }
+    PromiseReaction head;
+    while ((head = reactions) != SETTLED) {
+      reaction.next = head;
+      if (REACTIONS.compareAndSet(this, head, reaction)) {
+        return;
+      }
+    }
+    reaction.next = null;
+    if (PromiseInstrumentation.isEnabled()) {
+      reaction.readyAt = System.nanoTime();
+    }
+    reaction.submitTo(scheduler);
+  }
+
+  /**
+   * Unlinks reactions that no longer need to run, such as the hooks a decided race left on its losers.
+   * <p>
+   * Only the head is changed with a CAS. Interior links are rewritten without one: a racing purge can at worst
+   * resurrect a dead reaction, which then does nothing when it runs, but never drops a live one. The links are
+   * never rewritten by drainReactions, so a purge overlapping with settlement is harmless too.
+   */
+  void purgeReactions() {
+    PromiseReaction head;
+    while ((head = reactions) != null && head != SETTLED && !head.isLive()) {
+      REACTIONS.compareAndSet(this, head, head.next);
+    }
+    if (head == null || head == SETTLED) {
+      return;
+    }
+    PromiseReaction prev = head;
+    for (PromiseReaction current = head.next; current != null; current = current.next) {
+      if (current.isLive()) {
+        prev = current;
+      } else {
+        prev.next = current.next;
+      }
+    }
+  }
+
+  /**
+   * Detaches the whole reaction stack exactly once. Settle hooks run right here; the other live reactions are
+   * handed to the scheduler as a single batch in registration order, so a source with thousands of dependents
+   * costs one hand-off instead of thousands. Must only be called by the thread that moved this promise out of PENDING.
+   */
+  private void drainReactions() {
+    final PromiseReaction head = (PromiseReaction) REACTIONS.getAndSet(this, SETTLED);
+    if (head == null) {
+      return;
+    }
+    final boolean instrumented = PromiseInstrumentation.isEnabled();
+    if (instrumented) {
+      final long now = System.nanoTime();
+      for (PromiseReaction reaction = head; reaction != null; reaction = reaction.next) {
+        reaction.readyAt = now;
+      }
+    }
+    if (head.next == null) {
+      head.submitTo(scheduler);
+      return;
+    }
+    int count = 0;
+    for (PromiseReaction reaction = head; reaction != null; reaction = reaction.next) {
+      if (reaction.isLive()) {
+        count++;
+      }
+    }
+    final PromiseReaction[] ordered = new PromiseReaction[count];
+    for (PromiseReaction reaction = head; reaction != null && count > 0; reaction = reaction.next) {
+      if (reaction.isLive()) {
+        ordered[--count] = reaction;
+      }
+    }
+    int tasks = 0;
+    for (PromiseReaction reaction : ordered) {
+      if (reaction == null) {
+        continue;
+      }
+      if (reaction.runsOnSettlingThread()) {
+        reaction.run();
+      } else {
+        ordered[tasks++] = reaction;
+      }
+    }
+    if (tasks == 1) {
+      ordered[0].submitTo(scheduler);
+    } else if (tasks > 1) {
+      final PromiseReaction[] batch = tasks == ordered.length ? ordered : Arrays.copyOf(ordered, tasks);
+      if (instrumented) {
+        final long now = System.nanoTime();
+        for (PromiseReaction reaction : batch) {
+          reaction.submittedAt = now;
+        }
+      }
+      scheduler.scheduleBatch(batch);
+    }
+  }
+
+  /**
+   * Returns without touching any monitor once the outcome is published. Otherwise parks the caller on a
+   * waiter of its own, so settling this promise wakes exactly the threads blocked on it. The waiter is a
+   * settle hook, so waking it never depends on a free scheduler thread.
+   */
+  final void awaitSettled() {
+    if (reactions != SETTLED) {
+      final Waiter waiter = new Waiter();
+      addDependent(waiter);
+      waiter.await();
+    }
+  }
+
+  /**
+   * @return whether the promise settled within the given time; if not, this caller no longer counts as a dependent
+   */
+  final boolean awaitSettled(final long nanos) {
+    if (reactions != SETTLED) {
+      final Waiter waiter = new Waiter();
+      addDependent(waiter);
+      if (!waiter.await(nanos)) {
+        releaseDependent();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Waiter extends SettleHook {
+
+    private boolean released;
+    private boolean abandoned;
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        released = true;
+        notifyAll();
+      }
+    }
+
+    @Override
+    synchronized boolean isLive() {
+      return !abandoned;
+    }
+
+    /**
+     * @return whether the promise settled in time; otherwise the waiter is abandoned and left for purging
+     */
+    synchronized boolean await(final long nanos) {
+      final long deadline = System.nanoTime() + nanos;
+      boolean interrupted = false;
+      long remaining = nanos;
+      while (!released && remaining > 0) {
+        try {
+          wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        } catch (InterruptedException e) {
+          LOGGER.warning(e.getMessage());
+          interrupted = true;
+        }
+        remaining = deadline - System.nanoTime();
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      abandoned = !released;
+      return released;
+    }
+
+    synchronized void await() {
+      boolean interrupted = false;
+      while (!released) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          LOGGER.warning(e.getMessage());
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
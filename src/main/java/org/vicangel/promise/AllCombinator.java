@@ -0,0 +1,235 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * Shared state behind {@link PromiseSupport#all}, {@link PromiseSupport#allSettled} and their primitive variants:
+ * one pre-sized slot per input, filled by that input's settle hook, and an atomic countdown that settles the result
+ * on the last slot. Subclasses only decide what the slots are, an Object[] or a primitive array.
+ * The first rejection of all() rejects the result and detaches every slot, so the inputs still running no longer
+ * keep the combinator reachable; they are left to settle on their own. Cancelling the result detaches the slots as
+ * well, and cancels the inputs nobody else depends on.
+ */
+abstract class AllCombinator implements Detachable {
+
+  private static final VarHandle REMAINING;
+  private static final VarHandle DETACHED;
+  private final Promise<?> dest;
+  private final List<? extends AbstractPromise> inputs;
+  final boolean settled;
+  private volatile int remaining;
+  private volatile boolean detached;
+
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      REMAINING = lookup.findVarHandle(AllCombinator.class, "remaining", int.class);
+      DETACHED = lookup.findVarHandle(AllCombinator.class, "detached", boolean.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * @param settled whether every outcome is kept (allSettled) or the result rejects on the first error (all)
+   */
+  private AllCombinator(final Promise<?> dest, final List<? extends AbstractPromise> inputs, final boolean settled) {
+    this.dest = dest;
+    this.inputs = inputs;
+    this.settled = settled;
+    this.remaining = inputs.size();
+  }
+
+  static void attach(final Promise<?> dest, final List<Promise<?>> inputs, final boolean settled) {
+    if (inputs.isEmpty()) {
+      dest.fullFillResolve(List.of());
+      return;
+    }
+    attach(new Values(dest, inputs, settled));
+  }
+
+  static void attachInts(final Promise<int[]> dest, final List<IntPromise> inputs) {
+    if (inputs.isEmpty()) {
+      dest.fullFillResolve(new int[0]);
+      return;
+    }
+    attach(new Ints(dest, inputs));
+  }
+
+  static void attachLongs(final Promise<long[]> dest, final List<LongPromise> inputs) {
+    if (inputs.isEmpty()) {
+      dest.fullFillResolve(new long[0]);
+      return;
+    }
+    attach(new Longs(dest, inputs));
+  }
+
+  static void attachDoubles(final Promise<double[]> dest, final List<DoublePromise> inputs) {
+    if (inputs.isEmpty()) {
+      dest.fullFillResolve(new double[0]);
+      return;
+    }
+    attach(new Doubles(dest, inputs));
+  }
+
+  private static void attach(final AllCombinator combinator) {
+    combinator.dest.derivedFrom(combinator);
+    for (int i = 0; i < combinator.inputs.size(); i++) {
+      final AbstractPromise input = combinator.inputs.get(i);
+      PromiseInstrumentation.dependency(input, combinator.dest);
+      input.addDependent(combinator.new Slot(input, i));
+    }
+  }
+
+  /**
+   * Fills the slot of an input that has settled; for all() and the primitive variants it has fulfilled.
+   */
+  abstract void store(int index, AbstractPromise input);
+
+  abstract Object result();
+
+  @Override
+  public AbstractPromise detach() {
+    release(true);
+    return null;
+  }
+
+  /**
+   * Lets go of every input, so the slots still waiting no longer count as dependents.
+   *
+   * @param cancelAbandoned whether the inputs left without any dependent are cancelled, as when the result is
+   * @return whether this call released them; only the first one does
+   */
+  private boolean release(final boolean cancelAbandoned) {
+    if (!DETACHED.compareAndSet(this, false, true)) {
+      return false;
+    }
+    for (AbstractPromise input : inputs) {
+      if (input.releaseDependent() && cancelAbandoned) {
+        input.cancel();
+      }
+    }
+    return true;
+  }
+
+  private void complete(final int index, final AbstractPromise input) {
+    if (!settled && input.getStatus() != FULFILLED) {
+      if (release(false)) {
+        dest.fullFillReject(input.cause);
+      }
+      return;
+    }
+    store(index, input);
+    if ((int) REMAINING.getAndAdd(this, -1) == 1) {
+      dest.fullFillResolve(result());
+    }
+  }
+
+  private final class Slot extends SettleHook {
+
+    private final AbstractPromise src;
+    private final int index;
+
+    private Slot(final AbstractPromise src, final int index) {
+      this.src = src;
+      this.index = index;
+    }
+
+    @Override
+    boolean isLive() {
+      return !detached;
+    }
+
+    @Override
+    public void run() {
+      if (!detached) {
+        complete(index, src);
+      }
+    }
+  }
+
+  private static final class Values extends AllCombinator {
+
+    private final Object[] slots;
+
+    private Values(final Promise<?> dest, final List<Promise<?>> inputs, final boolean settled) {
+      super(dest, inputs, settled);
+      this.slots = new Object[inputs.size()];
+    }
+
+    @Override
+    void store(final int index, final AbstractPromise input) {
+      slots[index] = settled ? input.outcome() : ((Promise<?>) input).fulfilledValue();
+    }
+
+    @Override
+    Object result() {
+      return Arrays.asList(slots);
+    }
+  }
+
+  private static final class Ints extends AllCombinator {
+
+    private final int[] slots;
+
+    private Ints(final Promise<int[]> dest, final List<IntPromise> inputs) {
+      super(dest, inputs, false);
+      this.slots = new int[inputs.size()];
+    }
+
+    @Override
+    void store(final int index, final AbstractPromise input) {
+      slots[index] = ((IntPromise) input).fulfilledValue();
+    }
+
+    @Override
+    Object result() {
+      return slots;
+    }
+  }
+
+  private static final class Longs extends AllCombinator {
+
+    private final long[] slots;
+
+    private Longs(final Promise<long[]> dest, final List<LongPromise> inputs) {
+      super(dest, inputs, false);
+      this.slots = new long[inputs.size()];
+    }
+
+    @Override
+    void store(final int index, final AbstractPromise input) {
+      slots[index] = ((LongPromise) input).fulfilledValue();
+    }
+
+    @Override
+    Object result() {
+      return slots;
+    }
+  }
+
+  private static final class Doubles extends AllCombinator {
+
+    private final double[] slots;
+
+    private Doubles(final Promise<double[]> dest, final List<DoublePromise> inputs) {
+      super(dest, inputs, false);
+      this.slots = new double[inputs.size()];
+    }
+
+    @Override
+    void store(final int index, final AbstractPromise input) {
+      slots[index] = ((DoublePromise) input).fulfilledValue();
+    }
+
+    @Override
+    Object result() {
+      return slots;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Mutual exclusion for promise chains, an {@link AsyncSemaphore} with a single permit: {@link #lock()} returns a
+ * promise fulfilled once the caller holds the lock, and the lock passes to waiters in FIFO order. The lock is not
+ * owned by a thread, so it may be unlocked from whichever continuation finishes the guarded work, and it is not
+ * reentrant: locking it again while holding it waits for ever.
+ */
+public final class AsyncMutex {
+
+  private final AsyncSemaphore semaphore;
+
+  public AsyncMutex() {
+    this(PromiseSchedulers.getDefault());
+  }
+
+  /**
+   * @param scheduler runs the continuations of the promises returned by lock() and withLock()
+   */
+  public AsyncMutex(final PromiseScheduler scheduler) {
+    this.semaphore = new AsyncSemaphore(1, scheduler);
+  }
+
+  /**
+   * @return whether the lock was free and is now held by the caller
+   */
+  public boolean tryLock() {
+    return semaphore.tryAcquire();
+  }
+
+  /**
+   * @return a promise fulfilled once the caller holds the lock. Cancelling it before then leaves the queue.
+   */
+  public Promise<Void> lock() {
+    return semaphore.acquire();
+  }
+
+  /**
+   * @param timeout how long to wait for the lock; null waits for ever
+   * @return a promise fulfilled once the caller holds the lock, or rejected with a PromiseTimeoutException
+   */
+  public Promise<Void> lock(final Duration timeout) {
+    return semaphore.acquire(timeout);
+  }
+
+  /**
+   * Passes the lock to the oldest waiter, or frees it.
+   */
+  public void unlock() {
+    semaphore.release();
+  }
+
+  /**
+   * Runs the task while holding the lock, and unlocks once the task's promise settles.
+   *
+   * @return a promise settled like the task's promise
+   */
+  public <T> Promise<T> withLock(final Supplier<? extends Promise<T>> task) {
+    return semaphore.withPermit(task);
+  }
+
+  public boolean isLocked() {
+    return semaphore.availablePermits() == 0;
+  }
+}
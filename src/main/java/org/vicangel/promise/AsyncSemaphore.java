@@ -0,0 +1,335 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * Counting semaphore for promise chains: {@link #acquire()} returns a promise fulfilled once a permit is granted,
+ * so a waiter costs a queue node instead of a blocked thread.
+ * <p>
+ * A single state word holds the free permits, or -1 while acquirers are queued; there are never free permits
+ * and queued acquirers at the same time. Acquiring and releasing without contention is one CAS on that word and
+ * never takes the monitor. Otherwise acquirers queue in FIFO order under the monitor, and a release hands its
+ * permit straight to the oldest of them, so an acquirer arriving later cannot overtake the queue.
+ * <p>
+ * Cancelling a queued acquire, or the expiry of its timeout, takes it out of the queue. A grant that loses the
+ * race against a cancellation goes on to the next acquirer, so no permit is ever lost.
+ */
+public final class AsyncSemaphore {
+
+  private static final VarHandle STATE;
+  private final PromiseScheduler scheduler;
+  /**
+   * Shared by every acquire granted right away: a settled promise cannot change any more.
+   */
+  private final Promise<Void> granted;
+  private volatile int state;
+  // guarded by this
+  private Waiter head;
+  private Waiter tail;
+  private int queued;
+
+  static {
+    try {
+      STATE = MethodHandles.lookup().findVarHandle(AsyncSemaphore.class, "state", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  public AsyncSemaphore(final int permits) {
+    this(permits, PromiseSchedulers.getDefault());
+  }
+
+  /**
+   * @param scheduler runs the continuations of the promises returned by acquire() and withPermit()
+   */
+  public AsyncSemaphore(final int permits, final PromiseScheduler scheduler) {
+    if (permits < 0) {
+      throw new IllegalArgumentException("permits must not be negative but was " + permits);
+    }
+    this.state = permits;
+    this.scheduler = scheduler;
+    this.granted = Promise.fulfilled(null, scheduler);
+  }
+
+  /**
+   * Takes a permit if one is free, without queueing.
+   *
+   * @return whether a permit was taken; false also while other acquirers are queued
+   */
+  public boolean tryAcquire() {
+    int current;
+    while ((current = state) > 0) {
+      if (STATE.compareAndSet(this, current, current - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a promise fulfilled once a permit has been granted to the caller, who must release it afterwards.
+   * Cancelling it before the grant leaves the queue.
+   */
+  public Promise<Void> acquire() {
+    return acquire(null);
+  }
+
+  /**
+   * @param timeout how long to wait in the queue; null waits for ever
+   * @return a promise fulfilled once a permit has been granted, or rejected with a PromiseTimeoutException if
+   * none was granted in time
+   */
+  public Promise<Void> acquire(final Duration timeout) {
+    if (tryAcquire()) {
+      return granted;
+    }
+    final Promise<Void> promise = new Promise<>(scheduler);
+    final Waiter waiter = new Waiter(promise, timeout);
+    promise.derivedFrom(waiter);
+    if (!enqueue(waiter)) {
+      return granted;
+    }
+    if (timeout != null) {
+      waiter.timer = PromiseTimer.shared().schedule(timeout, waiter::expire);
+      if (promise.getStatus() != Status.PENDING) {
+        waiter.timer.cancel();
+      }
+    }
+    return promise;
+  }
+
+  /**
+   * Returns a permit: to the oldest queued acquirer if there is one, otherwise to the free permits.
+   */
+  public void release() {
+    while (true) {
+      final int current = state;
+      if (current >= 0) {
+        if (STATE.compareAndSet(this, current, current + 1)) {
+          return;
+        }
+        continue;
+      }
+      final Waiter next = poll();
+      if (next != null && next.grant()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs the task once a permit is granted and releases the permit when the task's promise settles, whatever
+   * the outcome.
+   *
+   * @return a promise settled like the task's promise. Cancelling it before the grant leaves the queue;
+   * cancelling it later cancels the task's promise.
+   */
+  public <T> Promise<T> withPermit(final Supplier<? extends Promise<T>> task) {
+    final Promise<T> dest = new Promise<>(scheduler);
+    final Promise<Void> permit = acquire();
+    dest.derivedFrom(() -> permit.getStatus() == Status.PENDING ? permit : null);
+    permit.register(new Start<>(this, permit, dest, task));
+    return dest;
+  }
+
+  /**
+   * @return the number of permits free right now
+   */
+  public int availablePermits() {
+    return Math.max(state, 0);
+  }
+
+  /**
+   * @return the number of acquirers waiting for a permit
+   */
+  public synchronized int getQueueLength() {
+    return queued;
+  }
+
+  /**
+   * Queues the waiter unless a permit was freed in the meantime. Under the monitor the state can only move from
+   * 0 to a positive count, through a release that found no queue, so it is read again until it settles.
+   *
+   * @return whether the waiter was queued; false if it took a free permit instead
+   */
+  private synchronized boolean enqueue(final Waiter waiter) {
+    while (true) {
+      final int current = state;
+      if (current > 0) {
+        if (STATE.compareAndSet(this, current, current - 1)) {
+          return false;
+        }
+      } else if (current < 0 || STATE.compareAndSet(this, 0, -1)) {
+        waiter.before = tail;
+        if (tail != null) {
+          tail.after = waiter;
+        } else {
+          head = waiter;
+        }
+        tail = waiter;
+        waiter.queued = true;
+        queued++;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return the oldest waiter, taken out of the queue, or null if the queue emptied before the monitor was taken
+   */
+  private synchronized Waiter poll() {
+    final Waiter next = head;
+    if (next != null) {
+      unlink(next);
+    }
+    return next;
+  }
+
+  /**
+   * @return whether the waiter was still queued
+   */
+  private synchronized boolean remove(final Waiter waiter) {
+    if (!waiter.queued) {
+      return false;
+    }
+    unlink(waiter);
+    return true;
+  }
+
+  /**
+   * Must be called while holding this monitor. Frees the state word once the last waiter is gone.
+   */
+  private void unlink(final Waiter waiter) {
+    if (waiter.before != null) {
+      waiter.before.after = waiter.after;
+    } else {
+      head = waiter.after;
+    }
+    if (waiter.after != null) {
+      waiter.after.before = waiter.before;
+    } else {
+      tail = waiter.before;
+    }
+    waiter.before = null;
+    waiter.after = null;
+    waiter.queued = false;
+    if (--queued == 0) {
+      state = 0;
+    }
+  }
+
+  /**
+   * A queued acquirer, also the upstream of its promise, so cancelling the promise takes it out of the queue.
+   */
+  private final class Waiter implements Detachable {
+
+    private final Promise<Void> promise;
+    private final Duration timeout;
+    private volatile PromiseTimer.Timeout timer;
+    // guarded by the semaphore
+    private Waiter before;
+    private Waiter after;
+    private boolean queued;
+
+    private Waiter(final Promise<Void> promise, final Duration timeout) {
+      this.promise = promise;
+      this.timeout = timeout;
+    }
+
+    /**
+     * Called once the waiter has left the queue with a permit.
+     *
+     * @return whether the promise took the permit; false if it was cancelled first
+     */
+    private boolean grant() {
+      cancelTimer();
+      promise.fullFillResolve(null);
+      return promise.getStatus() == FULFILLED;
+    }
+
+    private void expire() {
+      if (remove(this)) {
+        promise.fullFillReject(new PromiseTimeoutException(timeout));
+      }
+    }
+
+    private void cancelTimer() {
+      final PromiseTimer.Timeout pending = timer;
+      if (pending != null) {
+        pending.cancel();
+      }
+    }
+
+    @Override
+    public AbstractPromise detach() {
+      remove(this);
+      cancelTimer();
+      return null;
+    }
+  }
+
+  /**
+   * Runs the task once the permit is granted. It goes through the scheduler, since it calls user code.
+   */
+  private static final class Start<T> extends PromiseReaction {
+
+    private final AsyncSemaphore semaphore;
+    private final Promise<Void> permit;
+    private final Promise<T> dest;
+    private final Supplier<? extends Promise<T>> task;
+
+    private Start(final AsyncSemaphore semaphore, final Promise<Void> permit, final Promise<T> dest,
+                  final Supplier<? extends Promise<T>> task) {
+      this.semaphore = semaphore;
+      this.permit = permit;
+      this.dest = dest;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      if (permit.getStatus() != FULFILLED) {
+        return;
+      }
+      if (dest.getStatus() != Status.PENDING) {
+        semaphore.release();
+        return;
+      }
+      final Promise<T> started;
+      try {
+        started = task.get();
+        if (started == null) {
+          throw new NullPointerException("The guarded task returned no promise");
+        }
+      } catch (RuntimeException e) {
+        semaphore.release();
+        dest.fullFillReject(e);
+        return;
+      }
+      FollowHook.follow(started, dest);
+      started.register(new Release(semaphore));
+    }
+  }
+
+  private static final class Release extends SettleHook {
+
+    private final AsyncSemaphore semaphore;
+
+    private Release(final AsyncSemaphore semaphore) {
+      this.semaphore = semaphore;
+    }
+
+    @Override
+    public void run() {
+      semaphore.release();
+    }
+  }
+}
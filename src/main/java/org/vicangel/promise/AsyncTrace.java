@@ -0,0 +1,161 @@
+package org.vicangel.promise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vicangel.exceptions.PromiseChainTrace;
+
+/**
+ * Async stack traces: records where promises are created, for a sample of them, so a rejection can tell which
+ * then() chain it travelled along and not only which worker thread ran the failing function.
+ * <p>
+ * While enabled, every n-th promise created on a thread through the executor constructor, lazy(), then(),
+ * thenLazy(), catchError() or andFinally() walks the stack of its creator and keeps the first frames outside this
+ * package. A derived promise links to the sampled site of its source, and a promise that was not sampled passes
+ * that link on unchanged, so each sampled promise knows the chain of sampled sites leading to it. A chain keeps
+ * its newest sites only, so a promise at the end of an endless chain does not retain every site upstream. When a
+ * promise holding such a chain is rejected, the chain is attached to the reason as a suppressed
+ * {@link PromiseChainTrace}, once per reason however many chains it rejects.
+ * <p>
+ * The switch is a volatile static field, so it can be flipped while promises are being created: while it is off,
+ * creating a promise costs one extra volatile read and rejecting one an extra null check.
+ */
+public final class AsyncTrace {
+
+  /**
+   * Frames kept per sampled site, and sites walked when building the trace of a rejection. A chain is cut back to
+   * its newest MAX_SITES sites once it reaches twice as many, which bounds what it retains at a copy every
+   * MAX_SITES samples.
+   */
+  private static final int FRAMES_PER_SITE = 4;
+  private static final int MAX_SITES = 32;
+  private static final String PACKAGE = AsyncTrace.class.getPackageName();
+  private static final StackWalker WALKER = StackWalker.getInstance();
+  private static final ThreadLocal<int[]> COUNTDOWN = ThreadLocal.withInitial(() -> new int[1]);
+  /**
+   * Sample one promise in this many; 0 while async traces are off.
+   */
+  private static volatile int sampleEvery;
+
+  private AsyncTrace() {
+
+  }
+
+  /**
+   * Turns async traces on.
+   *
+   * @param rate record the creation site of one promise in {@code rate} per thread; 1 records every promise
+   */
+  public static void enable(final int rate) {
+    if (rate < 1) {
+      throw new IllegalArgumentException("rate must be positive but was " + rate);
+    }
+    sampleEvery = rate;
+  }
+
+  public static void disable() {
+    sampleEvery = 0;
+  }
+
+  public static boolean isEnabled() {
+    return sampleEvery != 0;
+  }
+
+  /**
+   * Called for a promise created by user code from scratch, which has no source to inherit a chain from.
+   */
+  static void created(final AbstractPromise promise) {
+    final int rate = sampleEvery;
+    if (rate != 0) {
+      promise.site = sample(null, rate);
+    }
+  }
+
+  /**
+   * Called for a promise derived from src, before it can settle.
+   */
+  static void derived(final AbstractPromise src, final AbstractPromise dest) {
+    final int rate = sampleEvery;
+    if (rate != 0) {
+      dest.site = sample(src.site, rate);
+    }
+  }
+
+  /**
+   * Attaches the chain of sites to a rejection reason, unless a chain is attached to it or to one of its causes
+   * already: a rejection travelling down a chain, as is or wrapped, keeps the chain of the promise it started from,
+   * and a reason shared by several chains only gets the chain of the first. The check and the attachment hold the
+   * monitor of the reason, which addSuppressed takes as well.
+   */
+  static void attach(final Throwable reason, final Site site) {
+    if (reason == null) {
+      return;
+    }
+    synchronized (reason) {
+      for (Throwable current = reason; current != null; current = current.getCause()) {
+        for (Throwable suppressed : current.getSuppressed()) {
+          if (suppressed instanceof PromiseChainTrace) {
+            return;
+          }
+        }
+      }
+      final List<StackTraceElement> frames = new ArrayList<>();
+      int sites = 0;
+      for (Site current = site; current != null && sites < MAX_SITES; current = current.parent, sites++) {
+        frames.addAll(List.of(current.frames));
+      }
+      reason.addSuppressed(new PromiseChainTrace(frames.toArray(new StackTraceElement[0])));
+    }
+  }
+
+  private static Site sample(final Site parent, final int rate) {
+    final int[] countdown = COUNTDOWN.get();
+    if (--countdown[0] > 0) {
+      return parent;
+    }
+    countdown[0] = rate;
+    return new Site(capture(), parent != null && parent.depth >= 2 * MAX_SITES - 1 ? newest(parent, MAX_SITES - 1)
+                                                                                    : parent);
+  }
+
+  /**
+   * @return a copy of the first {@code count} sites of the chain
+   */
+  private static Site newest(final Site site, final int count) {
+    return site == null || count == 0 ? null : new Site(site.frames, newest(site.parent, count - 1));
+  }
+
+  private static StackTraceElement[] capture() {
+    return WALKER.walk(frames -> frames
+      .filter(frame -> !isInternal(frame.getClassName()))
+      .limit(FRAMES_PER_SITE)
+      .map(StackWalker.StackFrame::toStackTraceElement)
+      .toArray(StackTraceElement[]::new));
+  }
+
+  /**
+   * Only classes of this very package count as internal, not those of its subpackages.
+   */
+  private static boolean isInternal(final String className) {
+    return className.startsWith(PACKAGE) && className.lastIndexOf('.') == PACKAGE.length();
+  }
+
+  /**
+   * The frames of one sampled creation site, linked to the closest sampled site upstream.
+   */
+  static final class Site {
+
+    private final StackTraceElement[] frames;
+    private final Site parent;
+    /**
+     * Sites in the chain ending here, this one included.
+     */
+    private final int depth;
+
+    private Site(final StackTraceElement[] frames, final Site parent) {
+      this.frames = frames;
+      this.parent = parent;
+      this.depth = parent == null ? 1 : parent.depth + 1;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package org.vicangel.promise;
+
+import java.util.function.Consumer;
+
+/**
+ * Task record created by {@link Promise#catchError}, {@link Promise#andFinally} and
+ * {@link PrimitivePromise#catchError}. It hands the settled outcome of the source to the action and then settles
+ * the destination like the source, unless the action throws.
+ * A cancelled source cancels the destination; catchError handlers are not called for it.
+ * Like {@link TransformTask} it is run by a {@link PromiseScheduler} as part of the source's batch.
+ *
+ * @author Nikiforos Xylogiannopoulos
+ */
+final class ConsumeTask<V> extends PromiseReaction implements Detachable {
+
+  private final AbstractPromise src;
+  private final AbstractPromise dest;
+  private final Consumer<? super ValueOrError<V>> action;
+  private final boolean recover;
+  private final PromiseScope.Member ticket;
+  private volatile boolean detached;
+
+  /**
+   * @param recover whether this serves catchError: the action is only called for a rejected source, which then
+   *                fulfills the destination (with null, or zero) once the action has handled it
+   */
+  ConsumeTask(final AbstractPromise src,
+              final AbstractPromise dest,
+              final Consumer<? super ValueOrError<V>> action,
+              final boolean recover) {
+    this.src = src;
+    this.dest = dest;
+    this.action = action;
+    this.recover = recover;
+    this.ticket = PromiseScope.capture(dest);
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    PromiseScope.release(ticket);
+    return src.releaseDependent() ? src : null;
+  }
+
+  @Override
+  public void run() {
+    if (detached) {
+      return;
+    }
+    PromiseInstrumentation.continuationStarted(this);
+    final PromiseScope previous = PromiseScope.enter(ticket);
+    try {
+      consume();
+    } finally {
+      PromiseScope.exit(ticket, previous);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void consume() {
+    final Status status = src.getStatus();
+    if (recover && status != Status.REJECTED) {
+      dest.settleLike(src);
+      return;
+    }
+    try {
+      action.accept((ValueOrError<V>) src.outcome());
+    } catch (Throwable exception) {
+      dest.fullFillReject(exception);
+      rethrowIfFatal(exception);
+      return;
+    }
+    if (recover) {
+      dest.recovered();
+    } else {
+      dest.settleLike(src);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package org.vicangel.promise;
+
+/**
+ * Built-in {@link PromiseListener} keeping running totals in striped counters, cheap enough to leave installed
+ * in production.
+ */
+public class CountingPromiseListener implements PromiseListener {
+
+  private final StripedCounter created = new StripedCounter();
+  private final StripedCounter fulfilled = new StripedCounter();
+  private final StripedCounter rejected = new StripedCounter();
+  private final StripedCounter cancelled = new StripedCounter();
+  private final StripedCounter continuations = new StripedCounter();
+  private final StripedCounter queueingDelayNanos = new StripedCounter();
+  private final StripedCounter settleToCallbackNanos = new StripedCounter();
+
+  @Override
+  public void onCreated(final AbstractPromise promise) {
+    created.add(1);
+  }
+
+  @Override
+  public void onSettled(final AbstractPromise promise, final Status status) {
+    switch (status) {
+      case FULFILLED:
+        fulfilled.add(1);
+        break;
+      case REJECTED:
+        rejected.add(1);
+        break;
+      case CANCELLED:
+        cancelled.add(1);
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void onContinuationExecuted(final long queueingDelay, final long settleToCallback) {
+    continuations.add(1);
+    queueingDelayNanos.add(queueingDelay);
+    settleToCallbackNanos.add(settleToCallback);
+  }
+
+  public long getCreated() {
+    return created.sum();
+  }
+
+  public long getFulfilled() {
+    return fulfilled.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public long getCancelled() {
+    return cancelled.sum();
+  }
+
+  public long getContinuationsExecuted() {
+    return continuations.sum();
+  }
+
+  public long getTotalQueueingDelayNanos() {
+    return queueingDelayNanos.sum();
+  }
+
+  public long getTotalSettleToCallbackNanos() {
+    return settleToCallbackNanos.sum();
+  }
+
+  public double getAverageQueueingDelayNanos() {
+    final long count = getContinuationsExecuted();
+    return count == 0 ? 0 : (double) getTotalQueueingDelayNanos() / count;
+  }
+
+  public double getAverageSettleToCallbackNanos() {
+    final long count = getContinuationsExecuted();
+    return count == 0 ? 0 : (double) getTotalSettleToCallbackNanos() / count;
+  }
+
+  public void reset() {
+    created.reset();
+    fulfilled.reset();
+    rejected.reset();
+    cancelled.reset();
+    continuations.reset();
+    queueingDelayNanos.reset();
+    settleToCallbackNanos.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "CountingPromiseListener{" +
+           "created=" + getCreated() +
+           ", fulfilled=" + getFulfilled() +
+           ", rejected=" + getRejected() +
+           ", cancelled=" + getCancelled() +
+           ", continuationsExecuted=" + getContinuationsExecuted() +
+           ", averageQueueingDelayNanos=" + getAverageQueueingDelayNanos() +
+           ", averageSettleToCallbackNanos=" + getAverageSettleToCallbackNanos() +
+           '}';
+  }
+}
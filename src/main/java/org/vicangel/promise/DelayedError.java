@@ -1,5 +1,6 @@
 package org.vicangel.promise;
 
+import java.time.Duration;
 import java.util.function.Consumer;
 
 public class DelayedError implements PromiseExecutor<Void> {
@@ -13,14 +14,21 @@ public class DelayedError implements PromiseExecutor<Void> {
   }
 
   public void execute(Consumer<Void> resolve, Consumer<Throwable> reject) {
-    new Thread(() -> {
-      try {
-        Thread.sleep(delayMillis);
-      } catch (InterruptedException e) {
-        System.out.println("Delayed error interrupted");
-      }
-      System.out.println("Delayed error rejects with " + error);
+    start(resolve, reject);
+  }
+
+  /**
+   * Schedules the deadline of this run on the shared timer. Aborting removes that deadline only, so the promise
+   * is never settled while other promises running this executor still are.
+   */
+  @Override
+  public Runnable start(Consumer<Void> resolve, Consumer<Throwable> reject) {
+    final PromiseTimer.Timeout timeout = PromiseTimer.shared().schedule(Duration.ofMillis(delayMillis), () -> {
       reject.accept(error);
-    }).start();
+    });
+    return () -> {
+      timeout.cancel();
+      abort();
+    };
   }
 }
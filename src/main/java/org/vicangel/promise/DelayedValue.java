@@ -1,5 +1,6 @@
 package org.vicangel.promise;
 
+import java.time.Duration;
 import java.util.function.Consumer;
 
 public class DelayedValue<V> implements PromiseExecutor<V> {
@@ -12,16 +13,26 @@ public class DelayedValue<V> implements PromiseExecutor<V> {
     this.delayMillis = delayMillis;
   }
 
+  public DelayedValue(V value, Duration delay) {
+    this(value, (int) Math.min(Integer.MAX_VALUE, Math.max(0, delay.toMillis())));
+  }
+
   public void execute(Consumer<V> resolve, Consumer<Throwable> reject) {
+    start(resolve, reject);
+  }
 
-    new Thread(() -> {
-      try {
-        Thread.sleep(delayMillis);
-      } catch (InterruptedException e) {
-        System.out.println("Delayed value interrupted");
-      }
-      System.out.println("Delayed value resolves with " + value);
+  /**
+   * Schedules the deadline of this run on the shared timer. Aborting removes that deadline only, so the promise
+   * is never settled while other promises running this executor still are.
+   */
+  @Override
+  public Runnable start(Consumer<V> resolve, Consumer<Throwable> reject) {
+    final PromiseTimer.Timeout timeout = PromiseTimer.shared().schedule(Duration.ofMillis(delayMillis), () -> {
       resolve.accept(value);
-    }).start();
+    });
+    return () -> {
+      timeout.cancel();
+      abort();
+    };
   }
 }
@@ -0,0 +1,13 @@
+package org.vicangel.promise;
+
+/**
+ * Link from a derived promise back to whatever settles it: the reaction registered on its source, or the
+ * combinator collecting its inputs. The link is cut when the derived promise is cancelled.
+ */
+interface Detachable {
+
+  /**
+   * @return a source that was left pending without any dependent, which the caller should cancel next, or null
+   */
+  AbstractPromise detach();
+}
@@ -0,0 +1,26 @@
+package org.vicangel.promise;
+
+/**
+ * Runs every continuation on the thread that hands it over: the settling thread, or the caller of
+ * {@code then} when the source has already settled. No thread is ever created.
+ * <p>
+ * Settling the head of a long pending chain recurses once per link; use {@link TrampolineScheduler} for such chains.
+ */
+public final class DirectScheduler implements PromiseScheduler {
+
+  public static final DirectScheduler INSTANCE = new DirectScheduler();
+
+  private DirectScheduler() {
+
+  }
+
+  @Override
+  public void schedule(final Runnable task) {
+    task.run();
+  }
+
+  @Override
+  public boolean allowsInline() {
+    return true;
+  }
+}
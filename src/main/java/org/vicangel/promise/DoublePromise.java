@@ -0,0 +1,101 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleUnaryOperator;
+
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * A promise of a double, kept in a primitive field so that neither the value nor the outcome is ever boxed
+ * on the way through a chain. Created through {@link Promise#thenToDouble}, {@link #of(double)} or a primitive then.
+ * <p>
+ * The object-valued continuation is called thenToObj rather than then: an implicitly typed lambda such as
+ * {@code x -> x + 1} would otherwise fit both overloads.
+ */
+public final class DoublePromise extends PrimitivePromise<DoublePromise> {
+
+  private double value;
+
+  DoublePromise(final PromiseScheduler scheduler) {
+    super(scheduler);
+  }
+
+  private DoublePromise(final double value, final PromiseScheduler scheduler) {
+    super(scheduler);
+    this.value = value;
+    fulfilledAtCreation();
+  }
+
+  /**
+   * @return a promise already fulfilled with the value, following the default scheduler for its continuations
+   */
+  public static DoublePromise of(final double value) {
+    return new DoublePromise(value, PromiseSchedulers.FOLLOW_DEFAULT);
+  }
+
+  public DoublePromise then(final DoubleUnaryOperator onResolve) {
+    final DoublePromise dest = new DoublePromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsDouble(src.getAsDouble())));
+    return dest;
+  }
+
+  public <T> Promise<T> thenToObj(final DoubleFunction<? extends T> onResolve) {
+    final Promise<T> dest = new Promise<>(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.fullFillResolve(func.apply(src.getAsDouble())));
+    return dest;
+  }
+
+  public Promise<Double> boxed() {
+    return thenToObj(Double::valueOf);
+  }
+
+  public double getAsDouble() {
+    awaitFulfilled();
+    return value;
+  }
+
+  /**
+   * @throws PromiseTimeoutException if the promise has not settled in time
+   */
+  public double getAsDouble(final Duration timeout) {
+    awaitFulfilled(timeout);
+    return value;
+  }
+
+  /**
+   * Reads the value of a promise known to be fulfilled, such as an input seen by a combinator slot.
+   */
+  double fulfilledValue() {
+    return value;
+  }
+
+  void complete(final double result) {
+    if (claim(FULFILLED)) {
+      this.value = result;
+      publish(FULFILLED);
+    }
+  }
+
+  @Override
+  DoublePromise pending() {
+    return new DoublePromise(scheduler);
+  }
+
+  @Override
+  void completeLike(final DoublePromise source) {
+    complete(source.value);
+  }
+
+  @Override
+  void recovered() {
+    complete(0);
+  }
+
+  @Override
+  Object boxedValue() {
+    return value;
+  }
+}
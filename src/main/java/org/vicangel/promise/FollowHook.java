@@ -0,0 +1,40 @@
+package org.vicangel.promise;
+
+/**
+ * Settle hook that makes a promise created by the library settle like one handed back by user code, such as the
+ * promise returned by a cache loader. Cancelling the follower releases the source, which is then cancelled if
+ * nothing else depends on it.
+ */
+final class FollowHook extends SettleHook implements Detachable {
+
+  private final Promise<?> src;
+  private final Promise<?> dest;
+  private volatile boolean detached;
+
+  private FollowHook(final Promise<?> src, final Promise<?> dest) {
+    this.src = src;
+    this.dest = dest;
+  }
+
+  static <V> void follow(final Promise<? extends V> src, final Promise<V> dest) {
+    src.derive(dest, new FollowHook(src, dest));
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public void run() {
+    if (!detached) {
+      dest.settleLike(src);
+    }
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    return src.releaseDependent() ? src : null;
+  }
+}
@@ -0,0 +1,151 @@
+package org.vicangel.promise;
+
+import java.util.function.Supplier;
+
+import static org.vicangel.promise.Status.FULFILLED;
+import static org.vicangel.promise.Status.PENDING;
+
+/**
+ * State behind {@link PromiseSupport#hedge}: starts a primary attempt and, if it is still pending once the
+ * threshold has passed on the shared {@link PromiseTimer}, a duplicate one. The first attempt to fulfill settles
+ * the result and the other one is released, so it is cancelled unless something else depends on it. A rejection
+ * settles the result only if the other attempt is not running: a primary failing before the threshold is
+ * reported right away, while a failing copy never hides a success of the other one.
+ */
+final class HedgeCombinator<T> implements Detachable {
+
+  private final Promise<T> dest;
+  private final Supplier<? extends Promise<T>> attempt;
+  // guarded by this
+  private final Promise<?>[] attempts = new Promise<?>[2];
+  private PromiseTimer.Timeout timer;
+  private boolean decided;
+
+  private HedgeCombinator(final Promise<T> dest, final Supplier<? extends Promise<T>> attempt) {
+    this.dest = dest;
+    this.attempt = attempt;
+  }
+
+  static <T> void attach(final Promise<T> dest, final Supplier<? extends Promise<T>> attempt, final long thresholdNanos) {
+    final HedgeCombinator<T> combinator = new HedgeCombinator<>(dest, attempt);
+    dest.derivedFrom(combinator);
+    final PromiseTimer.Timeout timeout =
+      PromiseTimer.shared().schedule(thresholdNanos, () -> dest.scheduler.schedule(() -> combinator.launch(1)));
+    synchronized (combinator) {
+      combinator.timer = timeout;
+    }
+    combinator.launch(0);
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    final Promise<?>[] abandoned = decide();
+    if (abandoned != null) {
+      for (Promise<?> running : abandoned) {
+        if (running != null && running.releaseDependent()) {
+          running.cancel();
+        }
+      }
+    }
+    return null;
+  }
+
+  private void launch(final int index) {
+    synchronized (this) {
+      if (decided) {
+        return;
+      }
+    }
+    final Promise<T> launched;
+    try {
+      launched = attempt.get();
+      if (launched == null) {
+        throw new NullPointerException("The hedged supplier returned no promise");
+      }
+    } catch (RuntimeException e) {
+      if (decide() != null) {
+        dest.fullFillReject(e);
+      }
+      return;
+    }
+    PromiseInstrumentation.dependency(launched, dest);
+    launched.addDependent(new Slot(launched, index));
+    final boolean abandoned;
+    synchronized (this) {
+      abandoned = decided;
+      attempts[index] = launched;
+    }
+    // decided before the attempt was published, so nobody else releases it
+    if (abandoned && launched.releaseDependent()) {
+      launched.cancel();
+    }
+  }
+
+  /**
+   * Called by a slot once its attempt has settled.
+   */
+  private void settled(final Promise<T> src, final int index) {
+    synchronized (this) {
+      if (decided) {
+        return;
+      }
+      final Promise<?> other = attempts[1 - index];
+      if (src.getStatus() != FULFILLED && other != null && other.getStatus() == PENDING) {
+        return;
+      }
+    }
+    final Promise<?>[] launched = decide();
+    if (launched == null) {
+      return;
+    }
+    final Promise<?> other = launched[1 - index];
+    if (other != null && other.releaseDependent()) {
+      other.cancel();
+    }
+    dest.settleLike(src);
+  }
+
+  /**
+   * Claims the result and stops the hedging timer.
+   *
+   * @return the attempts launched so far, or null if the result was already decided. An attempt launched later
+   * sees the result decided and releases itself.
+   */
+  private Promise<?>[] decide() {
+    final PromiseTimer.Timeout pending;
+    synchronized (this) {
+      if (decided) {
+        return null;
+      }
+      decided = true;
+      pending = timer;
+    }
+    if (pending != null) {
+      pending.cancel();
+    }
+    return attempts;
+  }
+
+  private final class Slot extends SettleHook {
+
+    private final Promise<T> src;
+    private final int index;
+
+    private Slot(final Promise<T> src, final int index) {
+      this.src = src;
+      this.index = index;
+    }
+
+    @Override
+    boolean isLive() {
+      synchronized (HedgeCombinator.this) {
+        return !decided;
+      }
+    }
+
+    @Override
+    public void run() {
+      settled(src, index);
+    }
+  }
+}
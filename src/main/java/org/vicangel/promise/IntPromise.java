@@ -0,0 +1,101 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * A promise of an int, kept in a primitive field so that neither the value nor the outcome is ever boxed
+ * on the way through a chain. Created through {@link Promise#thenToInt}, {@link #of(int)} or a primitive then.
+ * <p>
+ * The object-valued continuation is called thenToObj rather than then: an implicitly typed lambda such as
+ * {@code x -> x + 1} would otherwise fit both overloads.
+ */
+public final class IntPromise extends PrimitivePromise<IntPromise> {
+
+  private int value;
+
+  IntPromise(final PromiseScheduler scheduler) {
+    super(scheduler);
+  }
+
+  private IntPromise(final int value, final PromiseScheduler scheduler) {
+    super(scheduler);
+    this.value = value;
+    fulfilledAtCreation();
+  }
+
+  /**
+   * @return a promise already fulfilled with the value, following the default scheduler for its continuations
+   */
+  public static IntPromise of(final int value) {
+    return new IntPromise(value, PromiseSchedulers.FOLLOW_DEFAULT);
+  }
+
+  public IntPromise then(final IntUnaryOperator onResolve) {
+    final IntPromise dest = new IntPromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsInt(src.getAsInt())));
+    return dest;
+  }
+
+  public <T> Promise<T> thenToObj(final IntFunction<? extends T> onResolve) {
+    final Promise<T> dest = new Promise<>(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.fullFillResolve(func.apply(src.getAsInt())));
+    return dest;
+  }
+
+  public Promise<Integer> boxed() {
+    return thenToObj(Integer::valueOf);
+  }
+
+  public int getAsInt() {
+    awaitFulfilled();
+    return value;
+  }
+
+  /**
+   * @throws PromiseTimeoutException if the promise has not settled in time
+   */
+  public int getAsInt(final Duration timeout) {
+    awaitFulfilled(timeout);
+    return value;
+  }
+
+  /**
+   * Reads the value of a promise known to be fulfilled, such as an input seen by a combinator slot.
+   */
+  int fulfilledValue() {
+    return value;
+  }
+
+  void complete(final int result) {
+    if (claim(FULFILLED)) {
+      this.value = result;
+      publish(FULFILLED);
+    }
+  }
+
+  @Override
+  IntPromise pending() {
+    return new IntPromise(scheduler);
+  }
+
+  @Override
+  void completeLike(final IntPromise source) {
+    complete(source.value);
+  }
+
+  @Override
+  void recovered() {
+    complete(0);
+  }
+
+  @Override
+  Object boxedValue() {
+    return value;
+  }
+}
@@ -0,0 +1,159 @@
+package org.vicangel.promise;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous tasks strictly one after the other per key, while tasks of different keys run in parallel.
+ * Each key maps to the turn of the task submitted last, its tail: an internal promise settled once that task's
+ * promise has settled, whatever the outcome, or once the task was skipped. A new task starts when the tail settles
+ * and becomes the new tail. A tail removes its key as it settles unless a newer task has been queued behind it,
+ * so idle keys cost nothing.
+ * <p>
+ * The tails live in striped maps, each guarded by its own monitor and only held to swap a tail, so submissions for
+ * different keys rarely contend and never wait for a task to run.
+ */
+public final class KeyedSequencer<K> {
+
+  private final List<HashMap<K, Promise<?>>> stripes;
+  private final PromiseScheduler scheduler;
+
+  public KeyedSequencer() {
+    this(PromiseSchedulers.getDefault());
+  }
+
+  /**
+   * @param scheduler starts the tasks and runs the continuations of the promises returned by submit()
+   */
+  public KeyedSequencer(final PromiseScheduler scheduler) {
+    this.scheduler = scheduler;
+    final int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4));
+    final List<HashMap<K, Promise<?>>> created = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      created.add(new HashMap<>());
+    }
+    this.stripes = List.copyOf(created);
+  }
+
+  /**
+   * Queues the task behind every task submitted earlier for the same key. The task is only called once the
+   * previous one has settled, and a rejection does not stop the tasks queued after it.
+   *
+   * @return a promise settled like the task's promise. Cancelling it before its turn skips the task; cancelling it
+   * later cancels the task's promise, and the next task still waits for that promise to settle.
+   */
+  public <T> Promise<T> submit(final K key, final Supplier<? extends Promise<T>> task) {
+    final HashMap<K, Promise<?>> stripe = stripeFor(key);
+    final Promise<T> dest = new Promise<>(scheduler);
+    final Promise<Void> turn = new Promise<>(scheduler);
+    turn.register(new Prune(stripe, key, turn));
+    final Promise<?> previous;
+    synchronized (stripe) {
+      previous = stripe.put(key, turn);
+    }
+    final Start<T> start = new Start<>(dest, turn, task);
+    if (previous == null) {
+      start.submitTo(scheduler);
+    } else {
+      previous.register(start);
+    }
+    return dest;
+  }
+
+  /**
+   * @return the number of keys with a task running or queued
+   */
+  public int activeKeys() {
+    int count = 0;
+    for (HashMap<K, Promise<?>> stripe : stripes) {
+      synchronized (stripe) {
+        count += stripe.size();
+      }
+    }
+    return count;
+  }
+
+  private HashMap<K, Promise<?>> stripeFor(final Object key) {
+    final int hash = key.hashCode();
+    return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+  }
+
+  /**
+   * Runs the task once the previous turn has settled. It goes through the scheduler, since it calls user code.
+   */
+  private static final class Start<T> extends PromiseReaction {
+
+    private final Promise<T> dest;
+    private final Promise<Void> turn;
+    private final Supplier<? extends Promise<T>> task;
+
+    private Start(final Promise<T> dest, final Promise<Void> turn, final Supplier<? extends Promise<T>> task) {
+      this.dest = dest;
+      this.turn = turn;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      if (dest.getStatus() != Status.PENDING) {
+        turn.fullFillResolve(null);
+        return;
+      }
+      final Promise<T> started;
+      try {
+        started = task.get();
+        if (started == null) {
+          throw new NullPointerException("The sequenced task returned no promise");
+        }
+      } catch (RuntimeException e) {
+        dest.fullFillReject(e);
+        turn.fullFillResolve(null);
+        return;
+      }
+      FollowHook.follow(started, dest);
+      started.register(new EndTurn(turn));
+    }
+  }
+
+  /**
+   * Registered after the hook settling dest, so the next task never starts before dest has settled.
+   */
+  private static final class EndTurn extends SettleHook {
+
+    private final Promise<Void> turn;
+
+    private EndTurn(final Promise<Void> turn) {
+      this.turn = turn;
+    }
+
+    @Override
+    public void run() {
+      turn.fullFillResolve(null);
+    }
+  }
+
+  /**
+   * Removes the key once its tail settles, unless a newer task has taken its place.
+   */
+  private static final class Prune extends SettleHook {
+
+    private final HashMap<?, Promise<?>> stripe;
+    private final Object key;
+    private final Promise<?> tail;
+
+    private Prune(final HashMap<?, Promise<?>> stripe, final Object key, final Promise<?> tail) {
+      this.stripe = stripe;
+      this.key = key;
+      this.tail = tail;
+    }
+
+    @Override
+    public void run() {
+      synchronized (stripe) {
+        stripe.remove(key, tail);
+      }
+    }
+  }
+}
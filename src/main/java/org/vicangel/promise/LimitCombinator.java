@@ -0,0 +1,260 @@
+package org.vicangel.promise;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * Shared state behind {@link PromiseSupport#mapLimit} and {@link PromiseSupport#mapLimitUnordered}: pulls inputs
+ * from the iterator only while fewer than {@code limit} mapped promises are in flight, and maps the next one each
+ * time an earlier one fulfills. The first rejection rejects the result, stops pulling and releases the promises
+ * still in flight, which are cancelled unless something else depends on them; cancelling the result does the same.
+ * <p>
+ * The pump never recurses: a slot that settles while another thread, or an outer frame of the same thread, is
+ * pumping only flags that more room is available, and the pumping loop picks it up. A mapper returning settled
+ * promises on a direct scheduler therefore costs a bounded stack however long the input is.
+ */
+final class LimitCombinator<T, R> implements Detachable {
+
+  private final Promise<?> dest;
+  private final Iterator<? extends T> inputs;
+  private final Function<? super T, ? extends Promise<R>> mapper;
+  private final int limit;
+  /**
+   * Null for the ordered variant, which collects the values into {@code results} instead.
+   */
+  private final Consumer<? super R> onResult;
+  private final ArrayList<R> results;
+  /**
+   * Serializes the calls to onResult, so the consumer never runs on two threads at once.
+   */
+  private final Object emitLock = new Object();
+  // guarded by this
+  private Slot running;
+  private int active;
+  private int started;
+  private boolean exhausted;
+  private boolean finished;
+  private boolean pumping;
+  private boolean missed;
+
+  private LimitCombinator(final Promise<?> dest, final Iterator<? extends T> inputs,
+                          final Function<? super T, ? extends Promise<R>> mapper, final int limit,
+                          final Consumer<? super R> onResult) {
+    this.dest = dest;
+    this.inputs = inputs;
+    this.mapper = mapper;
+    this.limit = limit;
+    this.onResult = onResult;
+    this.results = onResult == null ? new ArrayList<>() : null;
+  }
+
+  static <T, R> void attach(final Promise<?> dest, final Iterable<? extends T> inputs,
+                            final Function<? super T, ? extends Promise<R>> mapper, final int limit,
+                            final Consumer<? super R> onResult) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive but was " + limit);
+    }
+    final LimitCombinator<T, R> combinator = new LimitCombinator<>(dest, inputs.iterator(), mapper, limit, onResult);
+    dest.derivedFrom(combinator);
+    combinator.pump();
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    release();
+    return null;
+  }
+
+  /**
+   * Starts mapped promises until the limit is reached or the input is exhausted. Only one thread pumps at a time;
+   * the iterator and the mapper are only ever called by it.
+   */
+  private void pump() {
+    synchronized (this) {
+      if (pumping) {
+        missed = true;
+        return;
+      }
+      pumping = true;
+    }
+    while (true) {
+      final int index;
+      synchronized (this) {
+        if (finished || exhausted || active == limit) {
+          if (!missed) {
+            pumping = false;
+            break;
+          }
+          missed = false;
+          continue;
+        }
+        active++;
+        index = started++;
+      }
+      final T input;
+      final Promise<R> mapped;
+      try {
+        if (!inputs.hasNext()) {
+          synchronized (this) {
+            exhausted = true;
+            active--;
+          }
+          continue;
+        }
+        input = inputs.next();
+        mapped = mapper.apply(input);
+        if (mapped == null) {
+          throw new NullPointerException("The mapper returned no promise for " + input);
+        }
+      } catch (RuntimeException e) {
+        fail(e);
+        return;
+      }
+      launch(mapped, index);
+    }
+    completeIfDone();
+  }
+
+  private void launch(final Promise<R> mapped, final int index) {
+    final Slot slot = new Slot(mapped, index);
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      if (results != null) {
+        results.add(null);
+      }
+      slot.after = running;
+      if (running != null) {
+        running.before = slot;
+      }
+      running = slot;
+    }
+    PromiseInstrumentation.dependency(mapped, dest);
+    mapped.addDependent(slot);
+  }
+
+  private void fulfilled(final Slot slot, final R value) {
+    if (onResult != null) {
+      try {
+        synchronized (emitLock) {
+          if (isFinished()) {
+            return;
+          }
+          onResult.accept(value);
+        }
+      } catch (RuntimeException e) {
+        fail(e);
+        return;
+      }
+    }
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      unlink(slot);
+      if (results != null) {
+        results.set(slot.index, value);
+      }
+      active--;
+    }
+    pump();
+  }
+
+  private synchronized boolean isFinished() {
+    return finished;
+  }
+
+  private void completeIfDone() {
+    synchronized (this) {
+      if (finished || !exhausted || active > 0) {
+        return;
+      }
+      finished = true;
+    }
+    dest.fullFillResolve(results);
+  }
+
+  private void fail(final Throwable reason) {
+    if (release()) {
+      dest.fullFillReject(reason);
+    }
+  }
+
+  /**
+   * Stops pulling and lets go of the promises in flight.
+   *
+   * @return whether this call finished the combinator
+   */
+  private boolean release() {
+    Slot abandoned;
+    synchronized (this) {
+      if (finished) {
+        return false;
+      }
+      finished = true;
+      abandoned = running;
+      running = null;
+    }
+    for (; abandoned != null; abandoned = abandoned.after) {
+      abandoned.detached = true;
+      if (abandoned.src.releaseDependent()) {
+        abandoned.src.cancel();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Must be called while holding this monitor.
+   */
+  private void unlink(final Slot slot) {
+    if (slot.before != null) {
+      slot.before.after = slot.after;
+    } else {
+      running = slot.after;
+    }
+    if (slot.after != null) {
+      slot.after.before = slot.before;
+    }
+  }
+
+  /**
+   * Reaction on one mapped promise, also a node of the list of promises in flight. It runs on the scheduler, not
+   * on the settling thread, because pumping calls the iterator and the mapper.
+   */
+  private final class Slot extends PromiseReaction {
+
+    private final Promise<R> src;
+    private final int index;
+    private Slot before;
+    private Slot after;
+    private volatile boolean detached;
+
+    private Slot(final Promise<R> src, final int index) {
+      this.src = src;
+      this.index = index;
+    }
+
+    @Override
+    boolean isLive() {
+      return !detached;
+    }
+
+    @Override
+    public void run() {
+      if (detached) {
+        return;
+      }
+      if (src.getStatus() == FULFILLED) {
+        fulfilled(this, src.fulfilledValue());
+      } else {
+        fail(src.cause);
+      }
+    }
+  }
+}
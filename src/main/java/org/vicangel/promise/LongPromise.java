@@ -0,0 +1,101 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * A promise of a long, kept in a primitive field so that neither the value nor the outcome is ever boxed
+ * on the way through a chain. Created through {@link Promise#thenToLong}, {@link #of(long)} or a primitive then.
+ * <p>
+ * The object-valued continuation is called thenToObj rather than then: an implicitly typed lambda such as
+ * {@code x -> x + 1} would otherwise fit both overloads.
+ */
+public final class LongPromise extends PrimitivePromise<LongPromise> {
+
+  private long value;
+
+  LongPromise(final PromiseScheduler scheduler) {
+    super(scheduler);
+  }
+
+  private LongPromise(final long value, final PromiseScheduler scheduler) {
+    super(scheduler);
+    this.value = value;
+    fulfilledAtCreation();
+  }
+
+  /**
+   * @return a promise already fulfilled with the value, following the default scheduler for its continuations
+   */
+  public static LongPromise of(final long value) {
+    return new LongPromise(value, PromiseSchedulers.FOLLOW_DEFAULT);
+  }
+
+  public LongPromise then(final LongUnaryOperator onResolve) {
+    final LongPromise dest = new LongPromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsLong(src.getAsLong())));
+    return dest;
+  }
+
+  public <T> Promise<T> thenToObj(final LongFunction<? extends T> onResolve) {
+    final Promise<T> dest = new Promise<>(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.fullFillResolve(func.apply(src.getAsLong())));
+    return dest;
+  }
+
+  public Promise<Long> boxed() {
+    return thenToObj(Long::valueOf);
+  }
+
+  public long getAsLong() {
+    awaitFulfilled();
+    return value;
+  }
+
+  /**
+   * @throws PromiseTimeoutException if the promise has not settled in time
+   */
+  public long getAsLong(final Duration timeout) {
+    awaitFulfilled(timeout);
+    return value;
+  }
+
+  /**
+   * Reads the value of a promise known to be fulfilled, such as an input seen by a combinator slot.
+   */
+  long fulfilledValue() {
+    return value;
+  }
+
+  void complete(final long result) {
+    if (claim(FULFILLED)) {
+      this.value = result;
+      publish(FULFILLED);
+    }
+  }
+
+  @Override
+  LongPromise pending() {
+    return new LongPromise(scheduler);
+  }
+
+  @Override
+  void completeLike(final LongPromise source) {
+    complete(source.value);
+  }
+
+  @Override
+  void recovered() {
+    complete(0);
+  }
+
+  @Override
+  Object boxedValue() {
+    return value;
+  }
+}
@@ -0,0 +1,112 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import org.vicangel.exceptions.PromiseRejectException;
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * What {@link IntPromise}, {@link LongPromise} and {@link DoublePromise} share: waiting for the value, rejecting
+ * a read of a promise that did not fulfill, and the continuations that pass the value through unchanged. Each
+ * subclass only keeps its value in a primitive field and copies it from a source of the same kind.
+ *
+ * @param <P> the concrete primitive promise, returned by the continuations that keep the kind of the source
+ */
+public abstract class PrimitivePromise<P extends PrimitivePromise<P>> extends AbstractPromise {
+
+  PrimitivePromise(final PromiseScheduler scheduler) {
+    super(scheduler);
+    PromiseInstrumentation.created(this);
+  }
+
+  /**
+   * Returns a promise settled like this one, or fulfilled with zero once the handler has dealt with a rejection,
+   * as {@link Promise#catchError} fulfills with null. Like there, the handler is not called for a cancellation.
+   */
+  public P catchError(final Consumer<Throwable> onRejected) {
+    final P dest = pending();
+    AsyncTrace.derived(this, dest);
+    derive(dest, new ConsumeTask<>(this, dest, outcome -> onRejected.accept(outcome.error()), true));
+    return dest;
+  }
+
+  /**
+   * Returns a promise that settles like this one, or is rejected with a {@link PromiseTimeoutException} if this one
+   * has not settled within the given duration, as {@link Promise#timeout(Duration)} does.
+   */
+  public P timeout(final Duration timeout) {
+    final P dest = pending();
+    final TimeoutHook hook = new TimeoutHook(this, dest);
+    derive(dest, hook);
+    hook.arm(timeout);
+    return dest;
+  }
+
+  /**
+   * @return a pending promise of the same kind, following the scheduler of this one
+   */
+  abstract P pending();
+
+  /**
+   * Fulfills this promise with the value of a source of the same kind that has fulfilled.
+   */
+  abstract void completeLike(P source);
+
+  /**
+   * @return the value of a fulfilled promise, boxed
+   */
+  abstract Object boxedValue();
+
+  /**
+   * For promises created already fulfilled, once the subclass has stored the value.
+   */
+  final void fulfilledAtCreation() {
+    settledAtCreation();
+    PromiseInstrumentation.settled(this, FULFILLED);
+  }
+
+  /**
+   * Blocks until this promise has settled.
+   *
+   * @throws PromiseRejectException if it did not fulfill
+   */
+  final void awaitFulfilled() {
+    awaitSettled();
+    if (getStatus() != FULFILLED) {
+      throw new PromiseRejectException(cause);
+    }
+  }
+
+  /**
+   * @throws PromiseTimeoutException if the promise has not settled in time
+   */
+  final void awaitFulfilled(final Duration timeout) {
+    if (!awaitSettled(PromiseTimer.saturatedNanos(timeout))) {
+      throw new PromiseTimeoutException(timeout);
+    }
+    awaitFulfilled();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  final void settleLike(final AbstractPromise source) {
+    switch (source.getStatus()) {
+      case CANCELLED:
+        cancel();
+        break;
+      case REJECTED:
+        fullFillReject(source.cause);
+        break;
+      default:
+        completeLike((P) source);
+    }
+  }
+
+  @Override
+  final ValueOrError<?> outcome() {
+    return getStatus() == FULFILLED ? ValueOrError.Value.of(boxedValue()) : ValueOrError.Error.of(cause);
+  }
+}
@@ -0,0 +1,95 @@
+package org.vicangel.promise;
+
+/**
+ * Task record behind every then() that starts or ends at a primitive promise. Each then() passes the step that
+ * suits the kinds of its source and destination, usually a non-capturing lambda, so one record type serves all the
+ * combinations without boxing the value in between and without casting the function back to its type.
+ *
+ * @param <S> the kind of the source
+ * @param <D> the kind of the destination
+ * @param <F> the function given to then()
+ */
+final class PrimitiveTask<S extends AbstractPromise, D extends AbstractPromise, F>
+  extends PromiseReaction implements Detachable {
+
+  private final S src;
+  private final D dest;
+  private final F func;
+  private final Step<? super S, ? super D, ? super F> step;
+  /**
+   * Held while the task is pending work of the scope current when then() was called; usually null.
+   */
+  private final PromiseScope.Member ticket;
+  private volatile boolean detached;
+
+  private PrimitiveTask(final S src, final D dest, final F func, final Step<? super S, ? super D, ? super F> step) {
+    this.src = src;
+    this.dest = dest;
+    this.func = func;
+    this.step = step;
+    this.ticket = PromiseScope.capture(dest);
+  }
+
+  /**
+   * Runs the step right away if the source allows inline continuations, otherwise registers a task for it.
+   */
+  static <S extends AbstractPromise, D extends AbstractPromise, F> void derive(
+    final S src, final D dest, final F func, final Step<? super S, ? super D, ? super F> step) {
+    AsyncTrace.derived(src, dest);
+    if (src.runsInline()) {
+      transform(src, dest, func, step);
+    } else {
+      src.derive(dest, new PrimitiveTask<>(src, dest, func, step));
+    }
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    PromiseScope.release(ticket);
+    return src.releaseDependent() ? src : null;
+  }
+
+  @Override
+  public void run() {
+    if (detached) {
+      return;
+    }
+    PromiseInstrumentation.continuationStarted(this);
+    final PromiseScope previous = PromiseScope.enter(ticket);
+    try {
+      transform(src, dest, func, step);
+    } finally {
+      PromiseScope.exit(ticket, previous);
+    }
+  }
+
+  private static <S extends AbstractPromise, D extends AbstractPromise, F> void transform(
+    final S src, final D dest, final F func, final Step<? super S, ? super D, ? super F> step) {
+    if (src.isCancelled()) {
+      dest.cancel();
+      return;
+    }
+    try {
+      step.apply(src, dest, func);
+    } catch (Throwable exception) {
+      dest.fullFillReject(exception);
+      rethrowIfFatal(exception);
+    }
+  }
+
+  /**
+   * Reads the value of a source that has settled, applies the function and settles the destination with the
+   * result; a source that did not fulfill throws from its getter instead.
+   */
+  @FunctionalInterface
+  interface Step<S, D, F> {
+
+    void apply(S src, D dest, F func);
+  }
+}
@@ -1,14 +1,16 @@
 package org.vicangel.promise;
 
+import java.time.Duration;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.logging.Logger;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import org.vicangel.exceptions.PromiseRejectException;
+import org.vicangel.exceptions.PromiseTimeoutException;
 
 import static org.vicangel.promise.Status.FULFILLED;
-import static org.vicangel.promise.Status.PENDING;
-import static org.vicangel.promise.Status.REJECTED;
 
 /**
  * @author Nikiforos Xylogiannopoulos
@@ -40,23 +42,70 @@ import static org.vicangel.promise.Status.REJECTED;
  * A helpful guide to help you understand Promises is available here:
  * @see <a href="https://javascript.info/async">...</a>
  */
-public class Promise<V> extends PromiseSupport implements Thenable<V> {
+public class Promise<V> extends AbstractPromise implements Thenable<V> {
 
-  private static final Logger LOGGER = Logger.getLogger(Promise.class.getName());
-  private final Object lock;
-  private volatile Status status = PENDING;
-  private ValueOrError<V> valueOrError;
-
-  // No instance fields are defined, perhaps you should add some!
+  /**
+   * The fulfillment value, meaningful once the status is FULFILLED; a rejection reason lives in {@code cause}.
+   * Neither is wrapped: a {@link ValueOrError} is only created for callers that ask for one.
+   */
+  private V result;
 
   public Promise(final PromiseExecutor<V> executor) {
-    super();
-    lock = new Object();
-    executor.execute(this::fullFillResolve, this::fullFillReject);
+    this(executor, PromiseSchedulers.getDefault());
+  }
+
+  /**
+   * @param scheduler runs the continuations of this promise and of every promise derived from it through then(),
+   *                  catchError() or andFinally().
+   */
+  public Promise(final PromiseExecutor<V> executor, final PromiseScheduler scheduler) {
+    super(scheduler);
+    PromiseInstrumentation.created(this);
+    AsyncTrace.created(this);
+    if (PromiseScope.adopt(this)) {
+      this.executor = executor;
+      started(executor.start(this::fullFillResolve, this::fullFillReject));
+    }
+  }
+
+  /**
+   * Creates a pending promise that is settled by the caller, as done for then() and the combinators.
+   */
+  Promise(final PromiseScheduler scheduler) {
+    super(scheduler);
+    PromiseInstrumentation.created(this);
+  }
+
+  /**
+   * Creates a promise that is fulfilled from the start: it never runs an executor and never holds reactions.
+   */
+  private Promise(final V value, final PromiseScheduler scheduler) {
+    super(scheduler);
+    this.result = value;
+    settledAtCreation();
+    PromiseInstrumentation.created(this);
+    PromiseInstrumentation.settled(this, FULFILLED);
+  }
+
+  static <V> Promise<V> fulfilled(final V value, final PromiseScheduler scheduler) {
+    return new Promise<>(value, scheduler);
+  }
+
+  /**
+   * Creates a cold promise: unlike the constructor, the executor is not run until something depends on the
+   * promise, that is a then(), catchError(), andFinally() or timeout() call, a get() or a combinator taking it as
+   * input, or an explicit {@link #start()}. It runs at most once, on the thread that triggered it, and its outcome
+   * is kept like any other. If the promise is cancelled first, the executor never runs.
+   */
+  public static <V> Promise<V> lazy(final PromiseExecutor<V> executor) {
+    return lazy(executor, PromiseSchedulers.getDefault());
   }
 
-  private Promise(final Object lock) {
-    this.lock = lock;
+  public static <V> Promise<V> lazy(final PromiseExecutor<V> executor, final PromiseScheduler scheduler) {
+    final Promise<V> promise = new Promise<>(scheduler);
+    AsyncTrace.created(promise);
+    promise.deferStart(() -> promise.execute(executor));
+    return promise;
   }
 
   /**
@@ -110,24 +159,54 @@ public class Promise<V> extends PromiseSupport implements Thenable<V> {
    */
   @Override
   public <T> Promise<T> then(Function<V, T> onResolve, Consumer<Throwable> onReject) {
-    synchronized (lock) {
-      final Promise<T> dest = new Promise<>(lock);
-      new PromiseTransformActionThread<>(this, dest, onResolve, onReject);
-      System.out.println("then(Function<V, T> onResolve, Consumer<Throwable> onReject) called with thread name " + Thread.currentThread().getName());
-      lock.notifyAll();
-      return dest;
+    final Promise<T> dest = new Promise<>(scheduler);
+    AsyncTrace.derived(this, dest);
+    if (runsInline()) {
+      TransformTask.transform(this, dest, onResolve, onReject);
+    } else {
+      derive(dest, new TransformTask<>(this, dest, onResolve, onReject));
     }
+    return dest;
   }
 
   @Override
   public <T> Promise<T> then(Function<V, T> onResolve) {
-    synchronized (lock) {
-      final Promise<T> dest = new Promise<>(lock);
-      new PromiseTransformActionThread<>(this, dest, onResolve);
-      System.out.println("then(Function<V, T> onResolve) called with thread name " + Thread.currentThread().getName());
-      lock.notifyAll();
-      return dest;
+    final Promise<T> dest = new Promise<>(scheduler);
+    AsyncTrace.derived(this, dest);
+    if (runsInline()) {
+      TransformTask.transform(this, dest, onResolve, null);
+    } else {
+      derive(dest, new TransformTask<>(this, dest, onResolve, null));
     }
+    return dest;
+  }
+
+  /**
+   * Like {@link #then(Function)}, but composes without starting anything: the returned promise is itself lazy and
+   * only attaches to this one, starting it if it is lazy too, once something depends on the returned promise.
+   * A graph of lazy promises can therefore be built up front, and only the branches actually consumed run.
+   */
+  public <T> Promise<T> thenLazy(final Function<V, T> onResolve) {
+    final Promise<T> dest = new Promise<>(scheduler);
+    AsyncTrace.derived(this, dest);
+    dest.deferStart(() -> {
+      if (runsInline()) {
+        TransformTask.transform(this, dest, onResolve, null);
+      } else {
+        derive(dest, new TransformTask<>(this, dest, onResolve, null));
+      }
+    });
+    return dest;
+  }
+
+  /**
+   * Starts a lazy promise without attaching anything to it. Has no effect on a promise that is already running.
+   *
+   * @return this promise
+   */
+  public Promise<V> start() {
+    triggerStart();
+    return this;
   }
 
   /**
@@ -155,14 +234,10 @@ public class Promise<V> extends PromiseSupport implements Thenable<V> {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/catch">...</a>
    */
   public <T> Promise<?> catchError(final Consumer<Throwable> onRejected) {
-    synchronized (lock) {
-      System.out.println("catchError called with thread name " + Thread.currentThread().getName());
-      onRejected.accept(this.getValueOrError().error());
-      final Function<V, T> catchErrorFunction = onRej -> (T) this;
-
-      lock.notifyAll();
-      return then(catchErrorFunction);
-    }
+    final Promise<V> dest = new Promise<>(scheduler);
+    AsyncTrace.derived(this, dest);
+    derive(dest, new ConsumeTask<>(this, dest, outcome -> onRejected.accept(outcome.error()), true));
+    return dest;
   }
 
   /**
@@ -216,68 +291,124 @@ public class Promise<V> extends PromiseSupport implements Thenable<V> {
    * finally() gets this constructor through promise.constructor[@@species].
    */
   public <T> Promise<V> andFinally(Consumer<ValueOrError<T>> onFinally) {
-    synchronized (lock) {
-      onFinally.accept((ValueOrError<T>) this.getValueOrError());
-      System.out.println("andFinally called with thread name " + Thread.currentThread().getName());
-      lock.notifyAll();
-      return this;
+    final Promise<V> dest = new Promise<>(scheduler);
+    AsyncTrace.derived(this, dest);
+    derive(dest, new ConsumeTask<>(this, dest, outcome -> onFinally.accept((ValueOrError<T>) outcome), false));
+    return dest;
+  }
+
+  /**
+   * Returns a promise that settles like this one, or is rejected with a {@link PromiseTimeoutException} if this one
+   * has not settled within the given duration. The deadline is kept by the shared {@link PromiseTimer}, not by a
+   * thread of its own. When the deadline passes, this promise is cancelled unless something else depends on it.
+   */
+  public Promise<V> timeout(final Duration timeout) {
+    final Promise<V> dest = new Promise<>(scheduler);
+    final TimeoutHook hook = new TimeoutHook(this, dest);
+    derive(dest, hook);
+    hook.arm(timeout);
+    return dest;
+  }
+
+  /**
+   * Continues with a primitive function, so the result is kept in an int field instead of a boxed Integer.
+   */
+  public IntPromise thenToInt(final ToIntFunction<? super V> onResolve) {
+    final IntPromise dest = new IntPromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsInt(src.get())));
+    return dest;
+  }
+
+  public LongPromise thenToLong(final ToLongFunction<? super V> onResolve) {
+    final LongPromise dest = new LongPromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsLong(src.get())));
+    return dest;
+  }
+
+  public DoublePromise thenToDouble(final ToDoubleFunction<? super V> onResolve) {
+    final DoublePromise dest = new DoublePromise(scheduler);
+    PrimitiveTask.derive(this, dest, onResolve, (src, to, func) -> to.complete(func.applyAsDouble(src.get())));
+    return dest;
+  }
+
+  private void execute(final PromiseExecutor<V> deferred) {
+    if (!PromiseScope.adopt(this)) {
+      return;
+    }
+    this.executor = deferred;
+    try {
+      started(deferred.start(this::fullFillResolve, this::fullFillReject));
+    } catch (RuntimeException e) {
+      fullFillReject(e);
     }
   }
 
-  protected <T> void fullFillResolve(T value) {
-    synchronized (lock) {
-      if (status != REJECTED) {
-        this.valueOrError = (ValueOrError<V>) ValueOrError.Value.of(value);
-        this.status = FULFILLED;
-        System.out.println("fullFillResolve called with value: " + value + " and thread name "
-                           + Thread.currentThread().getName());
-        lock.notifyAll();
-      }
+  /**
+   * Settles this promise with the outcome of a source that has already settled.
+   */
+  @Override
+  void settleLike(final AbstractPromise source) {
+    switch (source.getStatus()) {
+      case CANCELLED:
+        cancel();
+        break;
+      case REJECTED:
+        fullFillReject(source.cause);
+        break;
+      default:
+        fullFillResolve(((Promise<?>) source).result);
     }
   }
 
-  protected void fullFillReject(Throwable reason) {
-    synchronized (lock) {
-      if (this.status != FULFILLED) {
-        this.valueOrError = ValueOrError.Error.of(reason);
-        this.status = REJECTED;
-        System.out.println("fullFillReject called with value: " + reason + " and thread name "
-                           + Thread.currentThread().getName());
-        lock.notifyAll();
-      }
+  @Override
+  void recovered() {
+    fullFillResolve(null);
+  }
+
+  /**
+   * Reads the value of a promise known to be fulfilled, such as the source of a reaction.
+   */
+  V fulfilledValue() {
+    return result;
+  }
+
+  @Override
+  ValueOrError<V> outcome() {
+    return getStatus() == FULFILLED ? ValueOrError.Value.of(result) : ValueOrError.Error.of(cause);
+  }
+
+  protected <T> void fullFillResolve(T value) {
+    if (claim(FULFILLED)) {
+      this.result = (V) value;
+      publish(FULFILLED);
     }
   }
 
   public V get() {
-    synchronized (lock) {
-      while (this.status == PENDING) {
-        try {
-          lock.wait();
-        } catch (InterruptedException e) {
-          LOGGER.warning(e.getMessage());
-          Thread.currentThread().interrupt();
-        }
-      }
+    awaitSettled();
+    if (getStatus() == FULFILLED) {
+      return result;
     }
+    throw new PromiseRejectException(cause);
+  }
 
-    if (this.status == FULFILLED) {
-      return this.valueOrError.value();
+  /**
+   * Like {@link #get()}, but gives up once the timeout has elapsed. The promise itself is left untouched.
+   *
+   * @throws PromiseTimeoutException if the promise has not settled in time
+   */
+  public V get(final Duration timeout) {
+    if (!awaitSettled(PromiseTimer.saturatedNanos(timeout))) {
+      throw new PromiseTimeoutException(timeout);
     }
-    System.out.println("Throwing execution exception while getting value");
-    throw new PromiseRejectException(this.valueOrError.error());
+    return get();
   }
 
+  /**
+   * Wraps the outcome on every call; the shared instances for null, TRUE and FALSE aside, each call allocates.
+   */
   public ValueOrError<V> getValueOrError() {
-    synchronized (lock) {
-      while (this.status == PENDING) {
-        try {
-          lock.wait();
-        } catch (InterruptedException e) {
-          LOGGER.warning(e.getMessage());
-          Thread.currentThread().interrupt();
-        }
-      }
-    }
-    return this.valueOrError;
+    awaitSettled();
+    return outcome();
   }
-}
\ No newline at end of file
+}
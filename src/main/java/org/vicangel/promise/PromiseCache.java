@@ -0,0 +1,223 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * An asynchronous memoizing cache: {@link #get(Object)} returns the promise of the value for a key, calling the
+ * loader only when no live entry exists. Concurrent requests for a key that is still loading share the one
+ * in-flight promise, so a burst of identical lookups costs a single load.
+ * <p>
+ * Entries live in striped segments, each a {@link LinkedHashMap} in access order guarded by its own monitor, so
+ * lookups of different keys rarely contend. Every segment evicts its least recently used entry once it holds more
+ * than its share of {@code maximumSize}; the shares add up to exactly {@code maximumSize}, so the cache never holds
+ * more than that. Since each segment evicts on its own, a segment of hot keys may evict while others still have
+ * room: {@code maximumSize} is an upper bound, not the number of entries the cache is guaranteed to keep. An entry expires {@code expireAfterWrite} after its value arrived; once
+ * it is older than {@code refreshAfterWrite} the next hit still returns the cached value but starts a reload in the
+ * background, which replaces the entry when it fulfills. Loads that are rejected or cancelled are evicted as soon
+ * as they settle, so failures are never cached; a failed refresh leaves the previous value in place.
+ * <p>
+ * The loader is never called while a segment is locked: the entry is published with a pending promise first,
+ * which then follows the loader's promise. Promises handed out are shared by every caller of the key, so
+ * cancelling one cancels the load for all of them and evicts it.
+ */
+public final class PromiseCache<K, V> {
+
+  /**
+   * loadedAt of an entry whose value has not arrived yet; in-flight entries neither expire nor refresh.
+   */
+  private static final long LOADING = Long.MIN_VALUE;
+  private final Function<? super K, ? extends Promise<V>> loader;
+  private final PromiseScheduler scheduler;
+  private final long expireNanos;
+  private final long refreshNanos;
+  private final List<Segment<K, V>> segments;
+
+  /**
+   * A cache whose entries are never refreshed ahead of expiry.
+   */
+  public PromiseCache(final Function<? super K, ? extends Promise<V>> loader, final int maximumSize,
+                      final Duration expireAfterWrite) {
+    this(loader, maximumSize, expireAfterWrite, expireAfterWrite, PromiseSchedulers.getDefault());
+  }
+
+  /**
+   * @param refreshAfterWrite age after which a hit triggers a background reload; not earlier than expireAfterWrite
+   *                          disables refresh-ahead
+   * @param scheduler         runs the continuations of the promises handed out by the cache
+   */
+  public PromiseCache(final Function<? super K, ? extends Promise<V>> loader, final int maximumSize,
+                      final Duration expireAfterWrite, final Duration refreshAfterWrite,
+                      final PromiseScheduler scheduler) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("maximumSize must be positive but was " + maximumSize);
+    }
+    if (expireAfterWrite.isNegative() || expireAfterWrite.isZero()) {
+      throw new IllegalArgumentException("expireAfterWrite must be positive but was " + expireAfterWrite);
+    }
+    this.loader = loader;
+    this.scheduler = scheduler;
+    this.expireNanos = PromiseTimer.saturatedNanos(expireAfterWrite);
+    this.refreshNanos = Math.min(PromiseTimer.saturatedNanos(refreshAfterWrite), expireNanos);
+    final int stripes = Math.min(Integer.highestOneBit(maximumSize), stripes());
+    final List<Segment<K, V>> created = new ArrayList<>(stripes);
+    for (int i = 0; i < stripes; i++) {
+      created.add(new Segment<>(maximumSize / stripes + (i < maximumSize % stripes ? 1 : 0)));
+    }
+    this.segments = List.copyOf(created);
+  }
+
+  /**
+   * Returns the cached promise for the key, or starts loading it. A rejected or cancelled load is returned to the
+   * callers that shared it, but the next call loads again.
+   */
+  public Promise<V> get(final K key) {
+    final Segment<K, V> segment = segmentFor(key);
+    final long now = System.nanoTime();
+    final Entry<K, V> entry;
+    synchronized (segment) {
+      final Entry<K, V> current = segment.get(key);
+      if (current != null && !current.expiredAt(now, expireNanos)) {
+        if (!current.needsRefreshAt(now, refreshNanos)) {
+          return current.promise;
+        }
+        current.refreshing = true;
+        entry = new Entry<>(key, segment, current, new Promise<>(scheduler));
+      } else {
+        entry = new Entry<>(key, segment, null, new Promise<>(scheduler));
+        segment.put(key, entry);
+      }
+    }
+    load(entry);
+    return entry.replaces != null ? entry.replaces.promise : entry.promise;
+  }
+
+  /**
+   * Drops the entry of the key. A load in flight is left running for the callers already holding its promise.
+   */
+  public void invalidate(final K key) {
+    final Segment<K, V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.remove(key);
+    }
+  }
+
+  public void invalidateAll() {
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries, including in-flight and expired ones not yet evicted
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  private void load(final Entry<K, V> entry) {
+    entry.promise.register(entry);
+    final Promise<V> loaded;
+    try {
+      loaded = loader.apply(entry.key);
+    } catch (RuntimeException e) {
+      entry.promise.fullFillReject(e);
+      return;
+    }
+    if (loaded == null) {
+      entry.promise.fullFillReject(new NullPointerException("The loader returned no promise for " + entry.key));
+      return;
+    }
+    FollowHook.follow(loaded, entry.promise);
+  }
+
+  private Segment<K, V> segmentFor(final Object key) {
+    final int hash = key.hashCode();
+    return segments.get((hash ^ (hash >>> 16)) & (segments.size() - 1));
+  }
+
+  private static int stripes() {
+    return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4));
+  }
+
+  private static final class Segment<K, V> extends LinkedHashMap<K, Entry<K, V>> {
+
+    private final int capacity;
+
+    private Segment(final int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<K, Entry<K, V>> eldest) {
+      return size() > capacity;
+    }
+  }
+
+  /**
+   * A cached load, doubling as the settle hook of its own promise: on fulfillment it stamps the load time and, for
+   * a refresh, takes the place of the entry it replaces; on failure it evicts itself.
+   */
+  private static final class Entry<K, V> extends SettleHook {
+
+    private final K key;
+    private final Segment<K, V> segment;
+    private final Promise<V> promise;
+    /**
+     * The entry a refresh is meant to replace, or null for a plain load.
+     */
+    private final Entry<K, V> replaces;
+    private volatile long loadedAt = LOADING;
+    private volatile boolean refreshing;
+
+    private Entry(final K key, final Segment<K, V> segment, final Entry<K, V> replaces, final Promise<V> promise) {
+      this.key = key;
+      this.segment = segment;
+      this.replaces = replaces;
+      this.promise = promise;
+    }
+
+    private boolean expiredAt(final long now, final long expireNanos) {
+      final long loaded = loadedAt;
+      return loaded != LOADING && now - loaded >= expireNanos;
+    }
+
+    private boolean needsRefreshAt(final long now, final long refreshNanos) {
+      final long loaded = loadedAt;
+      return loaded != LOADING && !refreshing && now - loaded >= refreshNanos;
+    }
+
+    @Override
+    public void run() {
+      if (promise.getStatus() == FULFILLED) {
+        loadedAt = System.nanoTime();
+        if (replaces != null) {
+          synchronized (segment) {
+            segment.replace(key, replaces, this);
+          }
+        }
+      } else if (replaces != null) {
+        replaces.refreshing = false;
+      } else {
+        synchronized (segment) {
+          segment.remove(key, this);
+        }
+      }
+    }
+  }
+}
@@ -8,5 +8,22 @@ import java.util.function.Consumer;
 @FunctionalInterface
 public interface PromiseExecutor<V> {
   void execute(Consumer<V> resolve, Consumer<Throwable> reject);
-}
 
+  /**
+   * Runs this executor for one promise and returns the abort hook of that run, called when that promise is
+   * cancelled before it settles. By default it runs {@link #execute} and hands back {@link #abort()}; an executor
+   * that may be reused by several promises overrides it to keep the state of each run apart, so cancelling one
+   * promise only stops its own run.
+   */
+  default Runnable start(final Consumer<V> resolve, final Consumer<Throwable> reject) {
+    execute(resolve, reject);
+    return this::abort;
+  }
+
+  /**
+   * Abort hook called when the promise running this executor is cancelled before it settles.
+   * Implementations should stop the work they started; resolving or rejecting afterwards has no effect.
+   */
+  default void abort() {
+  }
+}
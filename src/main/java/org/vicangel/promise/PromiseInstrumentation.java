@@ -0,0 +1,50 @@
+package org.vicangel.promise;
+
+/**
+ * Holds the installed {@link PromiseListener}. The field is deliberately not volatile: install a listener at
+ * start-up, before promises are in flight, rather than toggling it under load.
+ */
+public final class PromiseInstrumentation {
+
+  private static PromiseListener listener = PromiseListener.NOOP;
+
+  private PromiseInstrumentation() {
+
+  }
+
+  public static void install(final PromiseListener promiseListener) {
+    listener = promiseListener != null ? promiseListener : PromiseListener.NOOP;
+  }
+
+  public static void uninstall() {
+    listener = PromiseListener.NOOP;
+  }
+
+  public static PromiseListener current() {
+    return listener;
+  }
+
+  static boolean isEnabled() {
+    return listener != PromiseListener.NOOP;
+  }
+
+  static void created(final AbstractPromise promise) {
+    listener.onCreated(promise);
+  }
+
+  static void settled(final AbstractPromise promise, final Status status) {
+    listener.onSettled(promise, status);
+  }
+
+  static void dependency(final AbstractPromise source, final AbstractPromise dependent) {
+    listener.onDependency(source, dependent);
+  }
+
+  static void continuationStarted(final PromiseReaction reaction) {
+    final PromiseListener current = listener;
+    if (current != PromiseListener.NOOP && reaction.submittedAt != 0) {
+      final long now = System.nanoTime();
+      current.onContinuationExecuted(now - reaction.submittedAt, now - reaction.readyAt);
+    }
+  }
+}
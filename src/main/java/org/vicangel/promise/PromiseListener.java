@@ -0,0 +1,42 @@
+package org.vicangel.promise;
+
+/**
+ * Receives lifecycle events of every promise once installed through {@link PromiseInstrumentation#install}.
+ * <p>
+ * Callbacks run inline on hot paths (constructors, settlement, continuation start) and must be cheap and
+ * thread-safe. All methods default to doing nothing; while {@link #NOOP} is installed no timestamps are taken and
+ * the calls are empty, monomorphic and inlined away by the JIT.
+ *
+ * @see CountingPromiseListener
+ */
+public interface PromiseListener {
+
+  PromiseListener NOOP = new PromiseListener() {
+  };
+
+  default void onCreated(AbstractPromise promise) {
+  }
+
+  /**
+   * @param status FULFILLED, REJECTED or CANCELLED
+   */
+  default void onSettled(AbstractPromise promise, Status status) {
+  }
+
+  /**
+   * Called when a then(), catchError() or andFinally() continuation starts running.
+   *
+   * @param queueingDelayNanos     time spent between being handed to the scheduler and starting
+   * @param settleToCallbackNanos  time between the source becoming settled (or the continuation being attached,
+   *                               if that came later) and starting
+   */
+  default void onContinuationExecuted(long queueingDelayNanos, long settleToCallbackNanos) {
+  }
+
+  /**
+   * Called when a pending promise starts waiting for another: a then(), catchError() or andFinally() continuation
+   * attached to its source, or an input of the combinator that settles it.
+   */
+  default void onDependency(AbstractPromise source, AbstractPromise dependent) {
+  }
+}
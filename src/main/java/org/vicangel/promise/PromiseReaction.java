@@ -0,0 +1,47 @@
+package org.vicangel.promise;
+
+/**
+ * A continuation registered on a pending {@link Promise}. Reactions double as the nodes of the promise's
+ * lock-free reaction stack, so a dependent costs exactly one object until its source settles.
+ */
+abstract class PromiseReaction implements Runnable {
+
+  PromiseReaction next;
+  /**
+   * Instrumentation timestamps, only taken while a {@link PromiseListener} is installed.
+   */
+  long readyAt;
+  long submittedAt;
+
+  /**
+   * Once a reaction reports false it must stay dead: it is then skipped on settle and may be unlinked
+   * by {@link Promise#purgeReactions()}.
+   */
+  boolean isLive() {
+    return true;
+  }
+
+  /**
+   * Whether drainReactions runs this reaction itself instead of adding it to the batch handed to the scheduler.
+   */
+  boolean runsOnSettlingThread() {
+    return false;
+  }
+
+  /**
+   * Rethrows what a continuation must not swallow once it has rejected its destination with it: after a
+   * VirtualMachineError nothing else should run on this thread as if all were well.
+   */
+  static void rethrowIfFatal(final Throwable failure) {
+    if (failure instanceof VirtualMachineError) {
+      throw (VirtualMachineError) failure;
+    }
+  }
+
+  void submitTo(final PromiseScheduler scheduler) {
+    if (PromiseInstrumentation.isEnabled()) {
+      submittedAt = System.nanoTime();
+    }
+    scheduler.schedule(this);
+  }
+}
@@ -0,0 +1,35 @@
+package org.vicangel.promise;
+
+/**
+ * Strategy used by a {@link Promise} to run its continuations once the source promise has settled.
+ * <p>
+ * A continuation is never handed to the scheduler while its source is still pending, so implementations
+ * only ever see work that is ready to run and never need to park a thread waiting for a result.
+ *
+ * @see PromiseSchedulers
+ */
+@FunctionalInterface
+public interface PromiseScheduler {
+
+  void schedule(Runnable task);
+
+  /**
+   * Schedules tasks that became ready together, typically every continuation of a promise that just settled.
+   * Implementations may hand them over as one unit instead of one by one. The array belongs to the scheduler
+   * from now on and must not be modified.
+   */
+  default void scheduleBatch(final Runnable[] tasks) {
+    for (Runnable task : tasks) {
+      schedule(task);
+    }
+  }
+
+  /**
+   * Whether a continuation registered on a promise that has already settled may run directly on the registering
+   * thread. Only schedulers that would run it there anyway should say so: the promise then skips the reaction
+   * object and the hand-off altogether.
+   */
+  default boolean allowsInline() {
+    return false;
+  }
+}
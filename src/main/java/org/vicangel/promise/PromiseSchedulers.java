@@ -0,0 +1,62 @@
+package org.vicangel.promise;
+
+/**
+ * Holds the scheduler used by promises that are not given one explicitly.
+ * <p>
+ * Unless {@link #setDefault(PromiseScheduler)} is called, the default is a {@link WorkerPoolScheduler} with one
+ * worker per available processor, created on first use. It never has fewer than two workers, so a continuation
+ * blocking on get() still leaves a worker to settle what it waits for on a single-processor machine.
+ */
+public final class PromiseSchedulers {
+
+  private static final int MIN_COMMON_PARALLELISM = 2;
+
+  /**
+   * Forwards to whatever the default is when a continuation is scheduled, for promises shared across the whole
+   * application such as the cached constants of {@link PromiseSupport#resolve(Object)}.
+   */
+  static final PromiseScheduler FOLLOW_DEFAULT = new PromiseScheduler() {
+    @Override
+    public void schedule(final Runnable task) {
+      getDefault().schedule(task);
+    }
+
+    @Override
+    public void scheduleBatch(final Runnable[] tasks) {
+      getDefault().scheduleBatch(tasks);
+    }
+
+    @Override
+    public boolean allowsInline() {
+      return getDefault().allowsInline();
+    }
+  };
+  private static volatile PromiseScheduler defaultScheduler;
+
+  private PromiseSchedulers() {
+
+  }
+
+  public static PromiseScheduler getDefault() {
+    final PromiseScheduler scheduler = defaultScheduler;
+    return scheduler != null ? scheduler : CommonPool.INSTANCE;
+  }
+
+  public static void setDefault(final PromiseScheduler scheduler) {
+    defaultScheduler = scheduler;
+  }
+
+  public static WorkerPoolScheduler commonPool() {
+    return CommonPool.INSTANCE;
+  }
+
+  static int commonParallelism(final int processors) {
+    return Math.max(MIN_COMMON_PARALLELISM, processors);
+  }
+
+  private static final class CommonPool {
+
+    private static final WorkerPoolScheduler INSTANCE =
+      new WorkerPoolScheduler(commonParallelism(Runtime.getRuntime().availableProcessors()), "promise-common");
+  }
+}
@@ -0,0 +1,374 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vicangel.exceptions.PromiseRejectException;
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * Owns the promises started while it is the current scope of a thread, so a request can wait for, or shed, all of
+ * its work at once:
+ * <pre>
+ * try (PromiseScope scope = PromiseScope.open(PromiseScope.Policy.FAIL_FAST, Duration.ofSeconds(2))) {
+ *   new Promise&lt;&gt;(lookupUser).then(user -&gt; new Promise&lt;&gt;(loadOrders(user)));
+ *   new Promise&lt;&gt;(loadPrices);
+ * }
+ * </pre>
+ * A promise is adopted when its executor starts: the constructor taking an executor, or the start of a lazy
+ * promise. Derived promises are not tracked, they follow their sources. Continuations attached through then(),
+ * catchError() or andFinally() while a scope is current count as pending work of the scope until they have run,
+ * and run with that scope current again on whatever thread, so promises started from inside them belong to the
+ * scope too and close() waits for them.
+ * <p>
+ * Under {@link Policy#FAIL_FAST} the first rejection cancels every other promise of the scope, and executors
+ * starting afterwards are not run at all. Under {@link Policy#JOIN_ALL} the promises run to completion and the first
+ * rejection is only recorded. {@link #close()} waits for the work of the scope to finish, up to the deadline;
+ * past it, the promises still pending are cancelled and nothing is adopted any more.
+ * <p>
+ * Scopes should be closed in the reverse order of opening, on the thread that opened them. A scope closed out of
+ * order or from another thread is skipped once it has finished: its thread carries on with the nearest enclosing
+ * scope still open.
+ * <p>
+ * While no scope is open anywhere, the cost of scopes for promises is a single volatile read per promise.
+ */
+public final class PromiseScope implements AutoCloseable {
+
+  public enum Policy {
+    /**
+     * The first rejection cancels every other promise of the scope.
+     */
+    FAIL_FAST,
+    /**
+     * Every promise runs to completion; the first rejection is recorded.
+     */
+    JOIN_ALL
+  }
+
+  private static final ThreadLocal<PromiseScope> CURRENT = new ThreadLocal<>();
+  /**
+   * Scopes opened and not yet finished, on any thread. While zero, nothing looks at the thread local.
+   */
+  private static volatile int openScopes;
+  private final Policy policy;
+  private final Duration deadline;
+  private final PromiseScope parent;
+  // guarded by this
+  private Member members;
+  private int pending;
+  private Throwable failure;
+  private boolean closing;
+  /**
+   * Set once close() has returned or given up: the scope no longer adopts anything.
+   */
+  private boolean finished;
+
+  private PromiseScope(final Policy policy, final Duration deadline, final PromiseScope parent) {
+    this.policy = policy;
+    this.deadline = deadline;
+    this.parent = parent;
+  }
+
+  /**
+   * Opens a scope whose close() waits as long as its promises take.
+   */
+  public static PromiseScope open(final Policy policy) {
+    return open(policy, null);
+  }
+
+  /**
+   * Opens a scope and makes it the current scope of this thread until it is closed. Scopes nest: the scope current
+   * before is restored on close.
+   *
+   * @param deadline how long close() waits before cancelling the promises still pending; null waits for ever
+   */
+  public static PromiseScope open(final Policy policy, final Duration deadline) {
+    final PromiseScope scope = new PromiseScope(policy, deadline, live(CURRENT.get()));
+    synchronized (PromiseScope.class) {
+      openScopes++;
+    }
+    CURRENT.set(scope);
+    return scope;
+  }
+
+  /**
+   * @return the scope current on this thread, or null
+   */
+  public static PromiseScope current() {
+    return openScopes == 0 ? null : live(CURRENT.get());
+  }
+
+  /**
+   * Adopts a promise started elsewhere, as if its executor had started inside the scope.
+   *
+   * @return the promise, cancelled already if the scope has failed or closed
+   */
+  public <P extends AbstractPromise> P track(final P promise) {
+    admit(promise);
+    return promise;
+  }
+
+  /**
+   * @return the first rejection among the promises of the scope, or null
+   */
+  public synchronized Throwable getFailure() {
+    return failure;
+  }
+
+  /**
+   * Waits for every promise of the scope to settle, cancelling the ones still pending once the deadline has passed,
+   * and restores the scope that was current before this one.
+   *
+   * @throws PromiseTimeoutException if promises were still pending at the deadline
+   * @throws PromiseRejectException  with the first rejection, under FAIL_FAST
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closing) {
+        return;
+      }
+      closing = true;
+    }
+    if (CURRENT.get() == this) {
+      final PromiseScope restored = live(parent);
+      if (restored == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(restored);
+      }
+    }
+    final boolean done = awaitMembers();
+    synchronized (this) {
+      finished = true;
+    }
+    synchronized (PromiseScope.class) {
+      openScopes--;
+    }
+    if (!done) {
+      cancelMembers();
+      throw new PromiseTimeoutException(deadline);
+    }
+    final Throwable first = getFailure();
+    if (first != null && policy == Policy.FAIL_FAST) {
+      throw new PromiseRejectException(first);
+    }
+  }
+
+  /**
+   * Called when an executor is about to start.
+   *
+   * @return whether the executor may run; false once the promise has been cancelled by its scope
+   */
+  static boolean adopt(final AbstractPromise promise) {
+    if (openScopes == 0) {
+      return true;
+    }
+    final PromiseScope scope = live(CURRENT.get());
+    return scope == null || scope.admit(promise);
+  }
+
+  /**
+   * Skips the scopes that have finished but are still current on a thread, as happens when scopes are closed out of
+   * order or from another thread: work started there belongs to the nearest enclosing scope still open.
+   */
+  private static PromiseScope live(final PromiseScope current) {
+    PromiseScope scope = current;
+    while (scope != null && scope.isFinished()) {
+      scope = scope.parent;
+    }
+    return scope;
+  }
+
+  /**
+   * Called when a continuation is created: if a scope is current, the continuation joins it as pending work.
+   *
+   * @param dest the promise the continuation settles, cancelled if the scope gives up on its work
+   * @return the ticket to pass to {@link #enter} and {@link #release}, or null
+   */
+  static Member capture(final AbstractPromise dest) {
+    final PromiseScope scope = current();
+    if (scope == null) {
+      return null;
+    }
+    final Member ticket = scope.new Member(dest, false);
+    return scope.link(ticket) ? ticket : null;
+  }
+
+  /**
+   * Makes the scope of the ticket current for the continuation about to run.
+   *
+   * @return the scope to restore afterwards through {@link #exit}
+   */
+  static PromiseScope enter(final Member ticket) {
+    if (ticket == null) {
+      return null;
+    }
+    final PromiseScope previous = CURRENT.get();
+    CURRENT.set(ticket.scope());
+    return previous;
+  }
+
+  /**
+   * Restores the scope current before the continuation ran and releases its ticket.
+   */
+  static void exit(final Member ticket, final PromiseScope previous) {
+    if (ticket == null) {
+      return;
+    }
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+    ticket.run();
+  }
+
+  /**
+   * Releases the ticket of a continuation that will not run, such as a detached one.
+   */
+  static void release(final Member ticket) {
+    if (ticket != null) {
+      ticket.run();
+    }
+  }
+
+  private synchronized boolean isFinished() {
+    return finished;
+  }
+
+  private boolean admit(final AbstractPromise promise) {
+    final Member member = new Member(promise, true);
+    if (!link(member)) {
+      promise.cancel();
+      return false;
+    }
+    promise.register(member);
+    return true;
+  }
+
+  /**
+   * @return whether the member joined the scope; false once the scope has failed fast or finished
+   */
+  private synchronized boolean link(final Member member) {
+    if (finished || failure != null && policy == Policy.FAIL_FAST) {
+      return false;
+    }
+    member.after = members;
+    if (members != null) {
+      members.before = member;
+    }
+    members = member;
+    pending++;
+    member.linked = true;
+    return true;
+  }
+
+  private void settled(final Member member) {
+    final boolean failFast;
+    synchronized (this) {
+      if (member.linked) {
+        member.linked = false;
+        if (member.before != null) {
+          member.before.after = member.after;
+        } else {
+          members = member.after;
+        }
+        if (member.after != null) {
+          member.after.before = member.before;
+        }
+        pending--;
+      }
+      final boolean rejected = member.watched && member.promise.getStatus() != FULFILLED && !member.promise.isCancelled();
+      failFast = rejected && failure == null && policy == Policy.FAIL_FAST;
+      if (rejected && failure == null) {
+        failure = member.promise.cause;
+      }
+      if (pending == 0) {
+        notifyAll();
+      }
+    }
+    if (failFast) {
+      cancelMembers();
+    }
+  }
+
+  /**
+   * @return whether every promise of the scope settled before the deadline
+   */
+  private synchronized boolean awaitMembers() {
+    final long end = deadline == null ? 0 : System.nanoTime() + PromiseTimer.saturatedNanos(deadline);
+    boolean interrupted = false;
+    try {
+      while (pending > 0) {
+        final long remaining = end - System.nanoTime();
+        if (deadline != null && remaining <= 0) {
+          return false;
+        }
+        try {
+          if (deadline == null) {
+            wait();
+          } else {
+            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      return true;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Cancels the pending promises of the scope, and the destinations of its pending continuations, which detaches
+   * them. Each cancellation unlinks its member; work arriving afterwards is refused, since the scope has failed
+   * or finished by then.
+   */
+  private void cancelMembers() {
+    final List<AbstractPromise> running = new ArrayList<>();
+    synchronized (this) {
+      for (Member member = members; member != null; member = member.after) {
+        running.add(member.promise);
+      }
+    }
+    running.forEach(AbstractPromise::cancel);
+  }
+
+  /**
+   * One piece of pending work of the scope, and a node of the list of them: either the settle hook of an adopted
+   * promise, or the ticket of a continuation, released once it has run. Releasing twice has no effect.
+   */
+  final class Member extends SettleHook {
+
+    private final AbstractPromise promise;
+    /**
+     * Whether a rejection of the promise counts as a failure of the scope: true for adopted promises only.
+     */
+    private final boolean watched;
+    // guarded by the scope
+    private Member before;
+    private Member after;
+    private boolean linked;
+
+    private Member(final AbstractPromise promise, final boolean watched) {
+      this.promise = promise;
+      this.watched = watched;
+    }
+
+    private PromiseScope scope() {
+      return PromiseScope.this;
+    }
+
+    @Override
+    public void run() {
+      settled(this);
+    }
+  }
+}
@@ -0,0 +1,479 @@
+package org.vicangel.promise;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.vicangel.promise.Status.FULFILLED;
+import static org.vicangel.promise.Status.PENDING;
+
+/**
+ * An asynchronous sequence whose elements are delivered one promise at a time. The stream is pulled: each call to
+ * {@link #next()} asks the source for exactly one more element, and a source is only ever asked again once the
+ * previous element has settled, so an unbounded source, such as a paginated service, is read with constant memory.
+ * A promise fulfilled with an empty Optional marks the end of the stream; a rejected one ends it with an error.
+ * <p>
+ * Operators build a new stream on top of this one and pull from it on demand. User functions run as continuations
+ * of the pulled promises, so they follow the scheduler of those promises exactly like {@link Promise#then}.
+ * Operators that may skip any number of elements, such as filter(), loop instead of recursing when the pulled
+ * promises are already settled. Elements are never null.
+ */
+public final class PromiseStream<T> {
+
+  private final Source<T> source;
+  private final Runnable onClose;
+  private final PromiseScheduler scheduler;
+  private volatile Promise<Optional<T>> outstanding;
+  private volatile boolean closed;
+
+  private PromiseStream(final Source<T> source, final Runnable onClose, final PromiseScheduler scheduler) {
+    this.source = source;
+    this.onClose = onClose;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * A stream reading its elements from {@code pull}, called once per element and never while the promise it
+   * returned last is still pending.
+   */
+  public static <T> PromiseStream<T> generate(final Supplier<Promise<Optional<T>>> pull) {
+    return new PromiseStream<>(pull::get, () -> {
+    }, PromiseSchedulers.getDefault());
+  }
+
+  public static <T> PromiseStream<T> fromIterable(final Iterable<? extends T> elements) {
+    final Iterator<? extends T> iterator = elements.iterator();
+    final PromiseScheduler scheduler = PromiseSchedulers.getDefault();
+    return new PromiseStream<>(() -> {
+      try {
+        return Promise.fulfilled(iterator.hasNext() ? Optional.of(iterator.next()) : Optional.empty(), scheduler);
+      } catch (RuntimeException e) {
+        final Promise<Optional<T>> failed = new Promise<>(scheduler);
+        failed.fullFillReject(e);
+        return failed;
+      }
+    }, () -> {
+    }, scheduler);
+  }
+
+  /**
+   * Pulls the next element.
+   *
+   * @return a promise fulfilled with the element, or with an empty Optional once the stream has ended or was closed
+   * @throws IllegalStateException if the element pulled last has not settled yet
+   */
+  public Promise<Optional<T>> next() {
+    final Promise<Optional<T>> previous = outstanding;
+    if (previous != null && previous.getStatus() == PENDING) {
+      throw new IllegalStateException("The previous element of the stream has not settled yet");
+    }
+    if (closed) {
+      return end();
+    }
+    final Promise<Optional<T>> pulled;
+    try {
+      pulled = Objects.requireNonNull(source.pull(), "The stream source returned no promise");
+    } catch (RuntimeException e) {
+      final Promise<Optional<T>> failed = new Promise<>(scheduler);
+      failed.fullFillReject(e);
+      return failed;
+    }
+    outstanding = pulled;
+    return pulled;
+  }
+
+  /**
+   * Stops the stream: an element still being pulled is cancelled, the sources this stream reads from are closed
+   * too and every later pull yields the end of the stream.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    final Promise<Optional<T>> pending = outstanding;
+    if (pending != null) {
+      pending.cancel();
+    }
+    onClose.run();
+  }
+
+  public <R> PromiseStream<R> map(final Function<? super T, ? extends R> mapper) {
+    return derived(() -> next().then(element -> element.map(value ->
+      Objects.requireNonNull(mapper.apply(value), "The mapper returned null"))));
+  }
+
+  public PromiseStream<T> filter(final Predicate<? super T> predicate) {
+    return derived(() -> {
+      final Promise<Optional<T>> dest = new Promise<>(scheduler);
+      new PullLoop<>(this, dest) {
+        @Override
+        boolean accept(final T element) {
+          if (!predicate.test(element)) {
+            return true;
+          }
+          dest.fullFillResolve(Optional.of(element));
+          return false;
+        }
+
+        @Override
+        void end() {
+          dest.fullFillResolve(Optional.empty());
+        }
+      }.start();
+      return dest;
+    });
+  }
+
+  /**
+   * Maps every element to a promise, with up to {@code concurrency} of them in flight: elements are pulled ahead
+   * while the mapped promises run, and the results are delivered in the order of their elements.
+   */
+  public <R> PromiseStream<R> flatMap(final Function<? super T, ? extends Promise<R>> mapper, final int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be positive but was " + concurrency);
+    }
+    final FlatMap<T, R> flatMap = new FlatMap<>(this, mapper, concurrency);
+    return new PromiseStream<>(flatMap, flatMap::close, scheduler);
+  }
+
+  /**
+   * Groups the elements into lists of {@code size}; the last list holds whatever is left.
+   */
+  public PromiseStream<List<T>> buffer(final int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("size must be positive but was " + size);
+    }
+    return derived(() -> {
+      final Promise<Optional<List<T>>> dest = new Promise<>(scheduler);
+      final List<T> chunk = new ArrayList<>(Math.min(size, 1024));
+      new PullLoop<>(this, dest) {
+        @Override
+        boolean accept(final T element) {
+          chunk.add(element);
+          if (chunk.size() < size) {
+            return true;
+          }
+          dest.fullFillResolve(Optional.of(chunk));
+          return false;
+        }
+
+        @Override
+        void end() {
+          dest.fullFillResolve(chunk.isEmpty() ? Optional.empty() : Optional.of(chunk));
+        }
+      }.start();
+      return dest;
+    });
+  }
+
+  /**
+   * Ends the stream after {@code count} elements and closes this one, so the source is not read any further.
+   */
+  public PromiseStream<T> take(final long count) {
+    final long[] taken = {0};
+    return derived(() -> {
+      if (taken[0] >= count) {
+        close();
+        return end();
+      }
+      taken[0]++;
+      return next();
+    });
+  }
+
+  /**
+   * Pulls up to {@code count} elements, one at a time.
+   *
+   * @return a promise fulfilled with the elements pulled; fewer than count once the stream has ended
+   */
+  public Promise<List<T>> request(final int count) {
+    final Promise<List<T>> dest = new Promise<>(scheduler);
+    final List<T> elements = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+    if (count <= 0) {
+      dest.fullFillResolve(elements);
+      return dest;
+    }
+    new PullLoop<>(this, dest) {
+      @Override
+      boolean accept(final T element) {
+        elements.add(element);
+        if (elements.size() < count) {
+          return true;
+        }
+        dest.fullFillResolve(elements);
+        return false;
+      }
+
+      @Override
+      void end() {
+        dest.fullFillResolve(elements);
+      }
+    }.start();
+    return dest;
+  }
+
+  /**
+   * Pulls every element and hands it to the action. If the action throws, the stream is closed and the result
+   * rejected.
+   *
+   * @return a promise fulfilled once the stream has ended
+   */
+  public Promise<Void> forEach(final Consumer<? super T> action) {
+    final Promise<Void> dest = new Promise<>(scheduler);
+    new PullLoop<>(this, dest) {
+      @Override
+      boolean accept(final T element) {
+        action.accept(element);
+        return true;
+      }
+
+      @Override
+      void end() {
+        dest.fullFillResolve(null);
+      }
+    }.start();
+    return dest;
+  }
+
+  public Promise<List<T>> toList() {
+    return request(Integer.MAX_VALUE);
+  }
+
+  private <R> PromiseStream<R> derived(final Source<R> derivedSource) {
+    return new PromiseStream<>(derivedSource, this::close, scheduler);
+  }
+
+  private Promise<Optional<T>> end() {
+    return Promise.fulfilled(Optional.empty(), scheduler);
+  }
+
+  @FunctionalInterface
+  private interface Source<T> {
+
+    Promise<Optional<T>> pull();
+  }
+
+  /**
+   * Pulls elements from a stream until {@link #accept} says stop or the stream ends. Elements that are already
+   * settled on a scheduler allowing inline continuations are taken in the loop; otherwise the loop resumes as a
+   * reaction of the pulled promise, so skipping a long run of elements never grows the stack.
+   */
+  private abstract static class PullLoop<T> extends PromiseReaction {
+
+    private final PromiseStream<T> stream;
+    private final Promise<?> dest;
+    private Promise<Optional<T>> current;
+
+    private PullLoop(final PromiseStream<T> stream, final Promise<?> dest) {
+      this.stream = stream;
+      this.dest = dest;
+    }
+
+    /**
+     * @return whether to pull another element; when false, dest has been settled
+     */
+    abstract boolean accept(T element);
+
+    abstract void end();
+
+    final void start() {
+      while (true) {
+        try {
+          current = stream.next();
+        } catch (IllegalStateException e) {
+          dest.fullFillReject(e);
+          return;
+        }
+        if (!current.runsInline()) {
+          current.register(this);
+          return;
+        }
+        if (!step()) {
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      if (step()) {
+        start();
+      }
+    }
+
+    private boolean step() {
+      if (current.getStatus() != FULFILLED) {
+        dest.fullFillReject(current.cause);
+        return false;
+      }
+      final Optional<T> element = current.fulfilledValue();
+      if (element.isEmpty()) {
+        end();
+        return false;
+      }
+      try {
+        return accept(element.get());
+      } catch (RuntimeException e) {
+        stream.close();
+        dest.fullFillReject(e);
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Source behind {@link #flatMap}: keeps pulling upstream while fewer than {@code concurrency} mapped promises are
+   * waiting to be delivered, and hands them out in order once the outcome of the head of the window is published.
+   * An upstream error is delivered after the elements pulled before it.
+   */
+  private static final class FlatMap<T, R> implements Source<R> {
+
+    private final PromiseStream<T> upstream;
+    private final Function<? super T, ? extends Promise<R>> mapper;
+    private final int concurrency;
+    // guarded by this
+    private final ArrayDeque<Promise<R>> window = new ArrayDeque<>();
+    private Promise<Optional<R>> waiting;
+    private boolean pulling;
+    private boolean exhausted;
+    private Throwable failure;
+
+    private FlatMap(final PromiseStream<T> upstream, final Function<? super T, ? extends Promise<R>> mapper,
+                    final int concurrency) {
+      this.upstream = upstream;
+      this.mapper = mapper;
+      this.concurrency = concurrency;
+    }
+
+    @Override
+    public Promise<Optional<R>> pull() {
+      final Promise<Optional<R>> dest = new Promise<>(upstream.scheduler);
+      synchronized (this) {
+        waiting = dest;
+      }
+      fill();
+      deliver();
+      return dest;
+    }
+
+    void close() {
+      final List<Promise<R>> abandoned;
+      synchronized (this) {
+        abandoned = new ArrayList<>(window);
+        window.clear();
+        exhausted = true;
+      }
+      abandoned.forEach(Promise::cancel);
+      upstream.close();
+    }
+
+    private void fill() {
+      synchronized (this) {
+        if (pulling || exhausted || failure != null || window.size() >= concurrency) {
+          return;
+        }
+        pulling = true;
+      }
+      final Promise<Optional<T>> pulled;
+      try {
+        pulled = upstream.next();
+      } catch (IllegalStateException e) {
+        pulled(null, e);
+        return;
+      }
+      pulled.register(new Resume(() -> pulled(pulled, null)));
+    }
+
+    private void pulled(final Promise<Optional<T>> pulled, final Throwable error) {
+      Throwable reason = error;
+      Promise<R> mapped = null;
+      boolean ended = false;
+      if (reason == null && pulled.getStatus() != FULFILLED) {
+        reason = pulled.cause;
+      } else if (reason == null && pulled.fulfilledValue().isEmpty()) {
+        ended = true;
+      } else if (reason == null) {
+        try {
+          mapped = Objects.requireNonNull(mapper.apply(pulled.fulfilledValue().get()), "The mapper returned no promise");
+        } catch (RuntimeException e) {
+          reason = e;
+        }
+      }
+      synchronized (this) {
+        pulling = false;
+        if (reason != null) {
+          failure = reason;
+        } else if (ended) {
+          exhausted = true;
+        } else if (!exhausted) {
+          window.addLast(mapped);
+        }
+      }
+      if (mapped != null) {
+        mapped.register(new Resume(this::deliver));
+      }
+      fill();
+      deliver();
+    }
+
+    private void deliver() {
+      final Promise<Optional<R>> dest;
+      final Promise<R> head;
+      final Throwable error;
+      synchronized (this) {
+        if (waiting == null) {
+          return;
+        }
+        head = window.peekFirst();
+        if (head != null && head.isPublished()) {
+          window.pollFirst();
+          error = null;
+        } else if (head == null && failure != null) {
+          error = failure;
+        } else if (head == null && exhausted) {
+          error = null;
+        } else {
+          return;
+        }
+        dest = waiting;
+        waiting = null;
+      }
+      if (head == null && error == null) {
+        dest.fullFillResolve(Optional.empty());
+      } else if (head == null) {
+        dest.fullFillReject(error);
+      } else if (head.getStatus() != FULFILLED) {
+        dest.fullFillReject(head.cause);
+        fill();
+      } else if (head.fulfilledValue() == null) {
+        dest.fullFillReject(new NullPointerException("A mapped promise was fulfilled with null"));
+        fill();
+      } else {
+        dest.fullFillResolve(Optional.of(head.fulfilledValue()));
+        fill();
+      }
+    }
+  }
+
+  private static final class Resume extends PromiseReaction {
+
+    private final Runnable action;
+
+    private Resume(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void run() {
+      action.run();
+    }
+  }
+}
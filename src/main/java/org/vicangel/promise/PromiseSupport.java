@@ -1,21 +1,20 @@
 package org.vicangel.promise;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.logging.Logger;
-
-import static org.vicangel.exceptions.PromiseRejectException.getInitCause;
-import static org.vicangel.helpers.ThrowingConsumer.throwingConsumerWrapper;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * @author Nikiforos Xylogiannopoulos
  */
 public abstract class PromiseSupport {
 
-  private static final Logger LOGGER = Logger.getLogger(PromiseSupport.class.getName());
-
   protected PromiseSupport() {
 
   }
@@ -58,22 +57,25 @@ public abstract class PromiseSupport {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/resolve">...</a>
    */
   public static <T> Promise<T> resolve(final T value) {
-    System.out.println("static resolve called with value: " + value);
     if (value instanceof Promise) {
-      System.out.println("static resolve called, immediately return promise");
       return (Promise<T>) value;
-    } else if (value instanceof List && ((List<?>) value).size() == 1 && ((List<?>) value).get(0) instanceof Exception) {
-      return (Promise<T>) PromiseSupport.reject((Throwable) ((List<?>) value).get(0));
     }
-    return new Promise<>((res, rej) -> {
-      try {
-        System.out.println("static resolve called - ACCEPT value");
-        res.accept(value);
-      } catch (Exception throwable) {
-        LOGGER.warning("static resolve called - REJECT value");
-        rej.accept(throwable);
-      }
-    });
+    final Promise<T> constant = Constants.lookup(value);
+    return constant != null ? constant : Promise.fulfilled(value, PromiseSchedulers.FOLLOW_DEFAULT);
+  }
+
+  /**
+   * @return a shared promise fulfilled with null
+   */
+  public static Promise<Void> resolveVoid() {
+    return (Promise<Void>) Constants.NULL;
+  }
+
+  /**
+   * @return a shared promise fulfilled with the immutable empty list
+   */
+  public static <T> Promise<List<T>> resolveEmptyList() {
+    return (Promise<List<T>>) (Promise<?>) Constants.EMPTY_IMMUTABLE_LIST;
   }
 
   /**
@@ -99,6 +101,14 @@ public abstract class PromiseSupport {
     return new Promise<>((res, rej) -> rej.accept(reason));
   }
 
+  /**
+   * Returns a promise fulfilled with the given value once the delay has elapsed. The delay is kept by the shared
+   * {@link PromiseTimer}; cancelling the promise removes it from the timer.
+   */
+  public static <T> Promise<T> delay(final Duration delay, final T value) {
+    return new Promise<>(new DelayedValue<>(value, delay));
+  }
+
   /**
    * The Promise.all() static method takes an iterable of promises as input and returns a single Promise.
    * This returned promise fulfills when all the input's promises fulfill (including when an empty iterable is passed),
@@ -126,17 +136,9 @@ public abstract class PromiseSupport {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/all">...</a>
    */
   public static Promise<List<?>> all(Iterable<Promise<?>> promises) {
-
-    final List<Object> list = Collections.synchronizedList(new ArrayList<>());
-
-    final Iterator<Promise<?>> promiseIterator = promises.iterator();
-    try {
-      promiseIterator.forEachRemaining(throwingConsumerWrapper(promise -> list.add(PromiseSupport.resolve(promise).get())));
-    } catch (Exception e) {
-      list.clear();
-      list.add(getInitCause(e));
-    }
-    return PromiseSupport.resolve(list);
+    final Promise<List<?>> result = new Promise<>(PromiseSchedulers.getDefault());
+    AllCombinator.attach(result, toList(promises), false);
+    return result;
   }
 
   /**
@@ -159,16 +161,9 @@ public abstract class PromiseSupport {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/race">...</a>
    */
   public static Promise<ValueOrError<?>> race(List<Promise<?>> promises) {
-    ValueOrError<?> valueOrError = null;
-    while (valueOrError == null) {
-      for (Promise<?> promise : promises) {
-        ValueOrError<?> promiseValueOrError = promise.getValueOrError();
-        if (promiseValueOrError != null) {
-          valueOrError = promiseValueOrError;
-        }
-      }
-    }
-    return PromiseSupport.resolve(valueOrError);
+    final Promise<ValueOrError<?>> result = new Promise<>(PromiseSchedulers.getDefault());
+    RaceCombinator.attach(result, promises, false);
+    return result;
   }
 
   /**
@@ -185,7 +180,7 @@ public abstract class PromiseSupport {
    * Asynchronously fulfilled, when any of the promises in the given iterable fulfills. The fulfillment value is the
    * fulfillment value of the first promise that was fulfilled.
    * Asynchronously rejected, when all the promises in the given iterable reject.
-   * The rejection reason is an AggregateError containing an array of rejection reasons in its error property.
+   * The rejection reason is a PromiseAggregateException containing the rejection reasons in its errors property.
    * The errors are in the order of the promises passed, regardless of completion order. If the iterable passed is
    * non-empty but contains no pending promises, the returned promise is still asynchronously (instead of synchronously)
    * rejected.
@@ -207,14 +202,9 @@ public abstract class PromiseSupport {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/any">...</a>
    */
   public static Promise<?> any(List<Promise<?>> promises) {
-    for (Promise<?> promise : promises) {
-      final var valueOrError = promise.getValueOrError();
-      if (valueOrError.hasError()) {
-        continue;
-      }
-      return promise;
-    }
-    return PromiseSupport.resolve("AggregateError: All promises were rejected");
+    final Promise<Object> result = new Promise<>(PromiseSchedulers.getDefault());
+    RaceCombinator.attach(result, promises, true);
+    return result;
   }
 
   /**
@@ -250,11 +240,149 @@ public abstract class PromiseSupport {
    * @see <a href="https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Global_Objects/Promise/allSettled">...</a>
    */
   public static Promise<List<ValueOrError<?>>> allSettled(List<Promise<?>> promises) {
+    final Promise<List<ValueOrError<?>>> result = new Promise<>(PromiseSchedulers.getDefault());
+    AllCombinator.attach(result, promises, true);
+    return result;
+  }
+
+  /**
+   * Like {@link #all(Iterable)} for int promises: the values are collected into an int[] without ever being boxed.
+   */
+  public static Promise<int[]> allInt(final List<IntPromise> promises) {
+    final Promise<int[]> result = new Promise<>(PromiseSchedulers.getDefault());
+    AllCombinator.attachInts(result, promises);
+    return result;
+  }
+
+  /**
+   * Like {@link #all(Iterable)} for long promises: the values are collected into a long[] without ever being boxed.
+   */
+  public static Promise<long[]> allLong(final List<LongPromise> promises) {
+    final Promise<long[]> result = new Promise<>(PromiseSchedulers.getDefault());
+    AllCombinator.attachLongs(result, promises);
+    return result;
+  }
+
+  /**
+   * Like {@link #all(Iterable)} for double promises: the values are collected into a double[] without ever being boxed.
+   */
+  public static Promise<double[]> allDouble(final List<DoublePromise> promises) {
+    final Promise<double[]> result = new Promise<>(PromiseSchedulers.getDefault());
+    AllCombinator.attachDoubles(result, promises);
+    return result;
+  }
 
-    final List<ValueOrError<?>> list = Collections.synchronizedList(new ArrayList<>());
+  /**
+   * Maps every input to a promise with at most {@code limit} of them in flight at once: the next input is only
+   * pulled from the iterable, and mapped, once an earlier promise has fulfilled. Unlike {@link #all(Iterable)}, the
+   * promises are therefore created lazily, so a large input never runs all of its work at the same time.
+   *
+   * @return a promise fulfilled with the values in input order, or rejected with the first rejection reason, in
+   * which case no further input is mapped and the promises in flight are cancelled unless something else depends
+   * on them. Cancelling it has the same effect.
+   */
+  public static <T, R> Promise<List<R>> mapLimit(final Iterable<? extends T> inputs, final int limit,
+                                                 final Function<? super T, ? extends Promise<R>> mapper) {
+    final Promise<List<R>> result = new Promise<>(PromiseSchedulers.getDefault());
+    LimitCombinator.attach(result, inputs, mapper, limit, null);
+    return result;
+  }
 
-    final Iterator<Promise<?>> promiseIterator = promises.iterator();
-    promiseIterator.forEachRemaining(promise -> list.add(promise.getValueOrError()));
-    return PromiseSupport.resolve(list);
+  /**
+   * Like {@link #mapLimit(Iterable, int, Function)}, but hands every value to {@code onResult} as soon as its promise
+   * fulfills instead of collecting them, so nothing but the promises in flight is kept in memory. The calls to
+   * onResult are made one at a time, in completion order; an exception thrown by it rejects the result.
+   *
+   * @return a promise fulfilled once every input has been mapped and every value consumed
+   */
+  public static <T, R> Promise<Void> mapLimitUnordered(final Iterable<? extends T> inputs, final int limit,
+                                                       final Function<? super T, ? extends Promise<R>> mapper,
+                                                       final Consumer<? super R> onResult) {
+    final Promise<Void> result = new Promise<>(PromiseSchedulers.getDefault());
+    LimitCombinator.attach(result, inputs, mapper, limit, Objects.requireNonNull(onResult));
+    return result;
+  }
+
+  /**
+   * Calls {@code attempt} until the promise it returns fulfills, at most {@code maxAttempts} times, waiting an
+   * exponentially growing, jittered delay between attempts: about initialBackoff before the second, twice that
+   * before the third and so on. Every rejection is retried.
+   */
+  public static <T> Promise<T> retry(final Supplier<? extends Promise<T>> attempt, final int maxAttempts,
+                                     final Duration initialBackoff) {
+    return retry(attempt, maxAttempts, initialBackoff, Duration.ofNanos(Long.MAX_VALUE), reason -> true);
+  }
+
+  /**
+   * Like {@link #retry(Supplier, int, Duration)}, with the backoff capped at {@code maxBackoff} and only the
+   * rejections accepted by {@code retryable} retried. The delays are kept by the shared {@link PromiseTimer}, so no
+   * thread sleeps between attempts.
+   *
+   * @return a promise settled like the last attempt. Cancelling it stops the retries and cancels the running attempt
+   * unless something else depends on it.
+   */
+  public static <T> Promise<T> retry(final Supplier<? extends Promise<T>> attempt, final int maxAttempts,
+                                     final Duration initialBackoff, final Duration maxBackoff,
+                                     final Predicate<? super Throwable> retryable) {
+    final Promise<T> result = new Promise<>(PromiseSchedulers.getDefault());
+    RetryCombinator.attach(result, attempt, maxAttempts, PromiseTimer.saturatedNanos(initialBackoff),
+                           PromiseTimer.saturatedNanos(maxBackoff), retryable);
+    return result;
+  }
+
+  /**
+   * Calls {@code attempt} once, and once more if the first promise is still pending after {@code threshold}. The
+   * result settles like the first attempt to fulfill, and the other attempt is then cancelled unless something
+   * else depends on it. If the primary attempt is rejected before the threshold, the result is rejected at once;
+   * otherwise it is only rejected once both attempts have failed.
+   */
+  public static <T> Promise<T> hedge(final Supplier<? extends Promise<T>> attempt, final Duration threshold) {
+    final Promise<T> result = new Promise<>(PromiseSchedulers.getDefault());
+    HedgeCombinator.attach(result, attempt, PromiseTimer.saturatedNanos(threshold));
+    return result;
+  }
+
+  /**
+   * Settled promises for the values resolved most often. They are never pending, so they carry no state that
+   * callers could contend on, and they follow the default scheduler of the moment for their continuations.
+   */
+  private static final class Constants {
+
+    private static final Promise<?> NULL = Promise.fulfilled(null, PromiseSchedulers.FOLLOW_DEFAULT);
+    private static final Promise<Boolean> TRUE = Promise.fulfilled(Boolean.TRUE, PromiseSchedulers.FOLLOW_DEFAULT);
+    private static final Promise<Boolean> FALSE = Promise.fulfilled(Boolean.FALSE, PromiseSchedulers.FOLLOW_DEFAULT);
+    private static final Promise<List<?>> EMPTY_LIST =
+      Promise.fulfilled(Collections.emptyList(), PromiseSchedulers.FOLLOW_DEFAULT);
+    private static final Promise<List<?>> EMPTY_IMMUTABLE_LIST = Promise.fulfilled(List.of(), PromiseSchedulers.FOLLOW_DEFAULT);
+
+    /**
+     * Matches by identity only, so that a caller always gets back the very object it resolved.
+     */
+    static <T> Promise<T> lookup(final T value) {
+      final Promise<?> constant;
+      if (value == null) {
+        constant = NULL;
+      } else if (value == Boolean.TRUE) {
+        constant = TRUE;
+      } else if (value == Boolean.FALSE) {
+        constant = FALSE;
+      } else if (value == Collections.emptyList()) {
+        constant = EMPTY_LIST;
+      } else if (value == List.of()) {
+        constant = EMPTY_IMMUTABLE_LIST;
+      } else {
+        constant = null;
+      }
+      return (Promise<T>) constant;
+    }
+  }
+
+  private static List<Promise<?>> toList(final Iterable<Promise<?>> promises) {
+    if (promises instanceof List) {
+      return (List<Promise<?>>) promises;
+    }
+    final List<Promise<?>> list = new ArrayList<>();
+    promises.forEach(list::add);
+    return list;
   }
 }
@@ -0,0 +1,196 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * One daemon thread serving every deadline from a binary min-heap ordered by deadline, so pending timeouts and
+ * delays cost a heap slot each instead of a sleeping thread. Each entry remembers its heap index, which keeps
+ * cancellation at O(log n) and leaves nothing behind for deadlines that never fire.
+ * <p>
+ * Tasks run on the timer thread and must be short: they are expected to settle a promise, whose reactions are
+ * then handed to its scheduler. A task that throws, even an Error, is logged and the timer carries on.
+ */
+public final class PromiseTimer {
+
+  private static final Logger LOGGER = Logger.getLogger(PromiseTimer.class.getName());
+  /**
+   * Keeps deadlines comparable by subtraction: about 146 years, so "forever" in practice.
+   */
+  private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+  private final String name;
+  private Timeout[] heap = new Timeout[64];
+  private int size;
+  private Thread thread;
+
+  public PromiseTimer(final String name) {
+    this.name = name;
+  }
+
+  public static PromiseTimer shared() {
+    return Shared.INSTANCE;
+  }
+
+  public Timeout schedule(final Duration delay, final Runnable task) {
+    return schedule(saturatedNanos(delay), task);
+  }
+
+  public Timeout schedule(final long delayNanos, final Runnable task) {
+    final Timeout timeout = new Timeout(System.nanoTime() + Math.min(Math.max(0, delayNanos), MAX_DELAY_NANOS), task);
+    synchronized (this) {
+      if (thread == null) {
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+      }
+      offer(timeout);
+      if (timeout.index == 0) {
+        notify();
+      }
+    }
+    return timeout;
+  }
+
+  /**
+   * @return the number of deadlines that have neither fired nor been cancelled
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  static long saturatedNanos(final Duration duration) {
+    try {
+      return duration.toNanos();
+    } catch (ArithmeticException e) {
+      return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+  }
+
+  private void run() {
+    while (true) {
+      awaitDue().fire();
+    }
+  }
+
+  private synchronized Timeout awaitDue() {
+    while (true) {
+      try {
+        if (size == 0) {
+          wait();
+          continue;
+        }
+        final long remaining = heap[0].deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return removeAt(0);
+        }
+        wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+      } catch (InterruptedException e) {
+        LOGGER.warning(e.getMessage());
+      }
+    }
+  }
+
+  private void offer(final Timeout timeout) {
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, size * 2);
+    }
+    siftUp(size++, timeout);
+  }
+
+  private Timeout removeAt(final int index) {
+    final Timeout removed = heap[index];
+    final Timeout last = heap[--size];
+    heap[size] = null;
+    if (index != size) {
+      siftDown(index, last);
+      if (heap[index] == last) {
+        siftUp(index, last);
+      }
+    }
+    removed.index = -1;
+    return removed;
+  }
+
+  private void siftUp(int index, final Timeout timeout) {
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (heap[parent].deadline - timeout.deadline <= 0) {
+        break;
+      }
+      place(index, heap[parent]);
+      index = parent;
+    }
+    place(index, timeout);
+  }
+
+  private void siftDown(int index, final Timeout timeout) {
+    final int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      final int right = child + 1;
+      if (right < size && heap[right].deadline - heap[child].deadline < 0) {
+        child = right;
+      }
+      if (timeout.deadline - heap[child].deadline <= 0) {
+        break;
+      }
+      place(index, heap[child]);
+      index = child;
+    }
+    place(index, timeout);
+  }
+
+  private void place(final int index, final Timeout timeout) {
+    heap[index] = timeout;
+    timeout.index = index;
+  }
+
+  /**
+   * Handle of a scheduled task, used to cancel it before it fires.
+   */
+  public final class Timeout {
+
+    private final long deadline;
+    private Runnable task;
+    private int index = -1;
+
+    private Timeout(final long deadline, final Runnable task) {
+      this.deadline = deadline;
+      this.task = task;
+    }
+
+    /**
+     * @return whether the task was removed before it fired
+     */
+    public boolean cancel() {
+      synchronized (PromiseTimer.this) {
+        if (index < 0) {
+          return false;
+        }
+        removeAt(index);
+        task = null;
+        return true;
+      }
+    }
+
+    private void fire() {
+      final Runnable runnable;
+      synchronized (PromiseTimer.this) {
+        runnable = task;
+        task = null;
+      }
+      try {
+        runnable.run();
+      } catch (Throwable e) {
+        // an Error escaping here would kill the one thread every other deadline depends on
+        LOGGER.warning("Timer task failed on " + name + ": " + e);
+      }
+    }
+  }
+
+  private static final class Shared {
+
+    private static final PromiseTimer INSTANCE = new PromiseTimer("promise-timer");
+  }
+}
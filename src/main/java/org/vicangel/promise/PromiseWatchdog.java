@@ -0,0 +1,347 @@
+package org.vicangel.promise;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in registry of pending promises, installed as the {@link PromiseListener}, that finds chains stuck in
+ * PENDING, such as a promise whose executor never calls resolve or reject:
+ * <pre>
+ * PromiseWatchdog watchdog = new PromiseWatchdog();
+ * PromiseInstrumentation.install(watchdog);
+ * watchdog.startReporting(Duration.ofSeconds(30), Duration.ofSeconds(10));
+ * ...
+ * watchdog.exportDot(Path.of("promises.dot"));
+ * </pre>
+ * Promises are only held weakly, so a promise nobody references any more is dropped rather than reported. They
+ * are kept in striped weak maps, each guarded by its own monitor, which they leave as they settle. Each record also
+ * remembers what its promise waits for: the source of a continuation, or the inputs of a combinator.
+ * <p>
+ * The reporting thread is a daemon that logs every promise pending for longer than the threshold, once per
+ * promise. The export writes the pending promises and everything they wait for as a dependency graph, in DOT or
+ * in JSON, with an edge from each source to the promise depending on it.
+ */
+public final class PromiseWatchdog implements PromiseListener {
+
+  private static final Logger LOGGER = Logger.getLogger(PromiseWatchdog.class.getName());
+  private static final VarHandle NEXT_ID;
+  private final List<WeakHashMap<AbstractPromise, Node>> stripes;
+  private volatile long nextId;
+  // guarded by this
+  private Thread reporter;
+
+  static {
+    try {
+      NEXT_ID = MethodHandles.lookup().findVarHandle(PromiseWatchdog.class, "nextId", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  public PromiseWatchdog() {
+    final int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4));
+    final List<WeakHashMap<AbstractPromise, Node>> created = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      created.add(new WeakHashMap<>());
+    }
+    this.stripes = List.copyOf(created);
+  }
+
+  @Override
+  public void onCreated(final AbstractPromise promise) {
+    final Node node = new Node(promise, (long) NEXT_ID.getAndAdd(this, 1L), System.nanoTime());
+    final WeakHashMap<AbstractPromise, Node> stripe = stripeFor(promise);
+    synchronized (stripe) {
+      stripe.put(promise, node);
+    }
+  }
+
+  @Override
+  public void onSettled(final AbstractPromise promise, final Status status) {
+    final WeakHashMap<AbstractPromise, Node> stripe = stripeFor(promise);
+    synchronized (stripe) {
+      stripe.remove(promise);
+    }
+  }
+
+  @Override
+  public void onDependency(final AbstractPromise source, final AbstractPromise dependent) {
+    final Node target = nodeOf(dependent);
+    final Node origin = nodeOf(source);
+    synchronized (target) {
+      target.sources.add(origin);
+    }
+  }
+
+  /**
+   * @return the number of promises created while installed that are still pending
+   */
+  public int pendingCount() {
+    int count = 0;
+    for (Node node : snapshot()) {
+      if (node.isPending()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the promises pending for longer than the threshold, oldest first
+   */
+  public List<AbstractPromise> findStalled(final Duration threshold) {
+    final List<AbstractPromise> stalled = new ArrayList<>();
+    for (Node node : stalledNodes(PromiseTimer.saturatedNanos(threshold))) {
+      final AbstractPromise promise = node.promise.get();
+      if (promise != null) {
+        stalled.add(promise);
+      }
+    }
+    return stalled;
+  }
+
+  /**
+   * Starts the daemon thread that checks for stalled promises at every interval, replacing the one already
+   * running if any.
+   *
+   * @param threshold how long a promise may stay pending before it is reported
+   */
+  public synchronized void startReporting(final Duration threshold, final Duration interval) {
+    stopReporting();
+    final long thresholdNanos = PromiseTimer.saturatedNanos(threshold);
+    final long intervalMillis = Math.max(1, interval.toMillis());
+    reporter = new Thread(() -> report(thresholdNanos, intervalMillis), "promise-watchdog");
+    reporter.setDaemon(true);
+    reporter.start();
+  }
+
+  public synchronized void stopReporting() {
+    if (reporter != null) {
+      reporter.interrupt();
+      reporter = null;
+    }
+  }
+
+  /**
+   * Writes the dependency graph of the pending promises in the DOT format of Graphviz.
+   */
+  public void exportDot(final Path file) throws IOException {
+    final long now = System.nanoTime();
+    final StringBuilder out = new StringBuilder("digraph promises {\n  node [shape=box];\n");
+    final List<Node> nodes = graph();
+    for (Node node : nodes) {
+      out.append("  p").append(node.id).append(" [label=\"").append(escape(node.describe(now), '"'))
+        .append("\"];\n");
+    }
+    for (Node node : nodes) {
+      for (Node source : node.sources()) {
+        out.append("  p").append(source.id).append(" -> p").append(node.id).append(";\n");
+      }
+    }
+    Files.writeString(file, out.append("}\n"));
+  }
+
+  /**
+   * Writes the dependency graph of the pending promises as a JSON object with a "nodes" and an "edges" array.
+   */
+  public void exportJson(final Path file) throws IOException {
+    final long now = System.nanoTime();
+    final List<Node> nodes = graph();
+    final StringBuilder out = new StringBuilder("{\n  \"nodes\": [");
+    String separator = "\n";
+    for (Node node : nodes) {
+      final AbstractPromise promise = node.promise.get();
+      out.append(separator).append("    {\"id\": \"p").append(node.id)
+        .append("\", \"type\": \"").append(escape(node.type, '"'))
+        .append("\", \"status\": \"").append(promise == null ? "COLLECTED" : promise.getStatus())
+        .append("\", \"ageMillis\": ").append((now - node.createdAt) / 1_000_000);
+      final String executor = node.executor();
+      if (executor != null) {
+        out.append(", \"executor\": \"").append(escape(executor, '"')).append('"');
+      }
+      out.append('}');
+      separator = ",\n";
+    }
+    out.append("\n  ],\n  \"edges\": [");
+    separator = "\n";
+    for (Node node : nodes) {
+      for (Node source : node.sources()) {
+        out.append(separator).append("    {\"from\": \"p").append(source.id).append("\", \"to\": \"p")
+          .append(node.id).append("\"}");
+        separator = ",\n";
+      }
+    }
+    Files.writeString(file, out.append("\n  ]\n}\n"));
+  }
+
+  private void report(final long thresholdNanos, final long intervalMillis) {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(intervalMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      final long now = System.nanoTime();
+      for (Node node : stalledNodes(thresholdNanos)) {
+        if (!node.reported) {
+          node.reported = true;
+          LOGGER.warning("Stalled promise " + node.describe(now));
+        }
+      }
+    }
+  }
+
+  private List<Node> stalledNodes(final long thresholdNanos) {
+    final long now = System.nanoTime();
+    final List<Node> stalled = new ArrayList<>();
+    for (Node node : snapshot()) {
+      if (node.isPending() && now - node.createdAt > thresholdNanos) {
+        stalled.add(node);
+      }
+    }
+    stalled.sort((a, b) -> Long.compare(a.id, b.id));
+    return stalled;
+  }
+
+  /**
+   * @return the pending promises and, transitively, every node they wait for, each once
+   */
+  private List<Node> graph() {
+    final Map<Node, Boolean> seen = new IdentityHashMap<>();
+    final List<Node> nodes = new ArrayList<>();
+    for (Node node : snapshot()) {
+      if (node.isPending() && seen.put(node, Boolean.TRUE) == null) {
+        nodes.add(node);
+      }
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      for (Node source : nodes.get(i).sources()) {
+        if (seen.put(source, Boolean.TRUE) == null) {
+          nodes.add(source);
+        }
+      }
+    }
+    nodes.sort((a, b) -> Long.compare(a.id, b.id));
+    return nodes;
+  }
+
+  private List<Node> snapshot() {
+    final List<Node> nodes = new ArrayList<>();
+    for (WeakHashMap<AbstractPromise, Node> stripe : stripes) {
+      synchronized (stripe) {
+        nodes.addAll(stripe.values());
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Finds the record of a promise, creating one for a promise created before the watchdog was installed. Such a
+   * record only joins the registry while its promise is pending.
+   */
+  private Node nodeOf(final AbstractPromise promise) {
+    final WeakHashMap<AbstractPromise, Node> stripe = stripeFor(promise);
+    synchronized (stripe) {
+      Node node = stripe.get(promise);
+      if (node == null) {
+        node = new Node(promise, (long) NEXT_ID.getAndAdd(this, 1L), System.nanoTime());
+        if (promise.getStatus() == Status.PENDING) {
+          stripe.put(promise, node);
+        }
+      }
+      return node;
+    }
+  }
+
+  private WeakHashMap<AbstractPromise, Node> stripeFor(final AbstractPromise promise) {
+    final int hash = System.identityHashCode(promise);
+    return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+  }
+
+  private static String escape(final String text, final char quote) {
+    final StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (c == quote || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c == '\n') {
+        escaped.append("\\n");
+      } else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /**
+   * What the watchdog knows about one promise. It only references the promise weakly, so the weak maps can drop
+   * it, but holds on to the records of its sources to describe what it waits for.
+   */
+  private static final class Node {
+
+    private final WeakReference<AbstractPromise> promise;
+    private final long id;
+    private final long createdAt;
+    private final String type;
+    // guarded by this
+    private final List<Node> sources = new ArrayList<>(1);
+    private volatile boolean reported;
+
+    private Node(final AbstractPromise promise, final long id, final long createdAt) {
+      this.promise = new WeakReference<>(promise);
+      this.id = id;
+      this.createdAt = createdAt;
+      this.type = promise.getClass().getSimpleName();
+    }
+
+    private boolean isPending() {
+      final AbstractPromise current = promise.get();
+      return current != null && current.getStatus() == Status.PENDING;
+    }
+
+    private synchronized List<Node> sources() {
+      return new ArrayList<>(sources);
+    }
+
+    /**
+     * @return the class of the executor of a pending promise, the usual suspect when it never settles, or null
+     */
+    private String executor() {
+      final AbstractPromise current = promise.get();
+      final PromiseExecutor<?> running = current == null ? null : current.executor;
+      return running == null ? null : running.getClass().getName();
+    }
+
+    private String describe(final long now) {
+      final AbstractPromise current = promise.get();
+      final StringBuilder text = new StringBuilder("p").append(id).append(' ').append(type).append(' ')
+        .append(current == null ? "COLLECTED" : current.getStatus())
+        .append(", created ").append((now - createdAt) / 1_000_000).append(" ms ago");
+      final String executor = executor();
+      if (executor != null) {
+        text.append(", executor ").append(executor);
+      }
+      final List<Node> waitsFor = sources();
+      if (!waitsFor.isEmpty()) {
+        text.append(", waiting on");
+        for (Node source : waitsFor) {
+          text.append(" p").append(source.id);
+        }
+      }
+      return text.toString();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+
+import org.vicangel.exceptions.PromiseAggregateException;
+
+/**
+ * Shared state behind {@link PromiseSupport#race} and {@link PromiseSupport#any}. Every input gets one settle hook;
+ * the first eligible outcome claims the result with a single CAS and the losers are then released: their hooks are
+ * purged, so a long-lived loser does not keep the race reachable, and they are left to settle on their own.
+ * Cancelling the result before it is decided releases every input as well, and cancels those nobody else depends on.
+ */
+final class RaceCombinator implements Detachable {
+
+  private static final VarHandle DECIDED;
+  private static final VarHandle REMAINING;
+  private static final VarHandle RELEASED;
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Slot[].class);
+  private final boolean any;
+  private final Throwable[] errors;
+  /**
+   * The hooks registered so far, published once registered, so that only inputs counting the race as a dependent
+   * are released.
+   */
+  private final Slot[] slots;
+  private Promise<?> dest;
+  private volatile boolean decided;
+  private volatile int remaining;
+
+  static {
+    try {
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      DECIDED = lookup.findVarHandle(RaceCombinator.class, "decided", boolean.class);
+      REMAINING = lookup.findVarHandle(RaceCombinator.class, "remaining", int.class);
+      RELEASED = lookup.findVarHandle(Slot.class, "released", boolean.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * @param any whether only fulfillments win (any) or any settlement does (race)
+   */
+  private RaceCombinator(final Promise<?> dest, final List<Promise<?>> inputs, final boolean any) {
+    this.dest = dest;
+    this.any = any;
+    this.remaining = inputs.size();
+    this.errors = any ? new Throwable[inputs.size()] : null;
+    this.slots = new Slot[inputs.size()];
+  }
+
+  static void attach(final Promise<?> dest, final List<Promise<?>> inputs, final boolean any) {
+    if (any && inputs.isEmpty()) {
+      dest.fullFillReject(new PromiseAggregateException(List.of()));
+      return;
+    }
+    final RaceCombinator combinator = new RaceCombinator(dest, inputs, any);
+    dest.derivedFrom(combinator);
+    for (int i = 0; i < inputs.size() && !combinator.decided; i++) {
+      final Promise<?> input = inputs.get(i);
+      final Slot slot = combinator.new Slot(input, i);
+      PromiseInstrumentation.dependency(input, dest);
+      input.addDependent(slot);
+      SLOTS.setVolatile(combinator.slots, i, slot);
+      if (combinator.decided) {
+        slot.release(dest.isCancelled());
+      }
+    }
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    if (DECIDED.compareAndSet(this, false, true)) {
+      release(true);
+    }
+    return null;
+  }
+
+  private void complete(final int index, final Promise<?> src) {
+    if (any && src.getStatus() != Status.FULFILLED) {
+      errors[index] = src.cause;
+      if ((int) REMAINING.getAndAdd(this, -1) == 1 && DECIDED.compareAndSet(this, false, true)) {
+        dest.fullFillReject(new PromiseAggregateException(Arrays.asList(errors)));
+        release(false);
+      }
+    } else if (DECIDED.compareAndSet(this, false, true)) {
+      if (any) {
+        dest.fullFillResolve(src.fulfilledValue());
+      } else {
+        dest.fullFillResolve(src.outcome());
+      }
+      release(false);
+    }
+  }
+
+  /**
+   * Runs on the winning thread only. Losing hooks never read dest once decided is set. A hook still being
+   * registered by attach() is released there instead, once it sees the race decided.
+   *
+   * @param cancelAbandoned whether the inputs left without any dependent are cancelled, as when the result is
+   */
+  private void release(final boolean cancelAbandoned) {
+    dest = null;
+    for (int i = 0; i < slots.length; i++) {
+      final Slot slot = (Slot) SLOTS.getVolatile(slots, i);
+      if (slot != null) {
+        slot.release(cancelAbandoned);
+      }
+    }
+  }
+
+  private final class Slot extends SettleHook {
+
+    private final Promise<?> src;
+    private final int index;
+    private volatile boolean released;
+
+    private Slot(final Promise<?> src, final int index) {
+      this.src = src;
+      this.index = index;
+    }
+
+    @Override
+    boolean isLive() {
+      return !decided;
+    }
+
+    @Override
+    public void run() {
+      if (!decided) {
+        complete(index, src);
+      }
+    }
+
+    /**
+     * Drops this hook's claim on its input, only once, and optionally cancels the input if nothing else depends on it.
+     */
+    private void release(final boolean cancelAbandoned) {
+      if (RELEASED.compareAndSet(this, false, true) && src.releaseDependent() && cancelAbandoned) {
+        src.cancel();
+      }
+    }
+  }
+}
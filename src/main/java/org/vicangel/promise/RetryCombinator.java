@@ -0,0 +1,128 @@
+package org.vicangel.promise;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.vicangel.promise.Status.FULFILLED;
+
+/**
+ * State behind {@link PromiseSupport#retry}: runs one attempt at a time and, when an attempt is rejected with a
+ * retryable error, schedules the next one on the shared {@link PromiseTimer} after an exponential backoff with
+ * jitter. No thread ever sleeps between attempts. The combinator doubles as the reaction registered on every
+ * attempt, which is fine because attempts never overlap.
+ * <p>
+ * Cancelling the result removes a pending backoff from the timer and releases the running attempt, which is
+ * cancelled unless something else depends on it.
+ */
+final class RetryCombinator<T> extends PromiseReaction implements Detachable {
+
+  private final Promise<T> dest;
+  private final Supplier<? extends Promise<T>> attempt;
+  private final int maxAttempts;
+  private final long initialNanos;
+  private final long maxNanos;
+  private final Predicate<? super Throwable> retryable;
+  /**
+   * Only touched by the attempt in progress, and attempts run one after the other.
+   */
+  private int attempts;
+  private volatile Promise<T> current;
+  private volatile PromiseTimer.Timeout backoff;
+  private volatile boolean detached;
+
+  private RetryCombinator(final Promise<T> dest, final Supplier<? extends Promise<T>> attempt, final int maxAttempts,
+                          final long initialNanos, final long maxNanos, final Predicate<? super Throwable> retryable) {
+    this.dest = dest;
+    this.attempt = attempt;
+    this.maxAttempts = maxAttempts;
+    this.initialNanos = initialNanos;
+    this.maxNanos = maxNanos;
+    this.retryable = retryable;
+  }
+
+  static <T> void attach(final Promise<T> dest, final Supplier<? extends Promise<T>> attempt, final int maxAttempts,
+                         final long initialNanos, final long maxNanos, final Predicate<? super Throwable> retryable) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be positive but was " + maxAttempts);
+    }
+    final RetryCombinator<T> combinator =
+      new RetryCombinator<>(dest, attempt, maxAttempts, Math.max(0, initialNanos), Math.max(0, maxNanos), retryable);
+    dest.derivedFrom(combinator);
+    combinator.launch();
+  }
+
+  /**
+   * The delay before the attempt following the given one: half of the capped exponential backoff plus a random
+   * share of the other half, so clients failing together do not retry in lockstep.
+   */
+  static long backoffNanos(final long initialNanos, final long maxNanos, final int attempt) {
+    final int shift = attempt - 1;
+    final long capped = shift >= 63 || initialNanos > maxNanos >> shift ? maxNanos : initialNanos << shift;
+    final long half = capped >> 1;
+    return half + (long) (Math.random() * (capped - half));
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    final PromiseTimer.Timeout pending = backoff;
+    if (pending != null) {
+      pending.cancel();
+    }
+    final Promise<T> running = current;
+    return running != null && running.releaseDependent() ? running : null;
+  }
+
+  @Override
+  public void run() {
+    if (detached) {
+      return;
+    }
+    final Promise<T> settled = current;
+    final boolean retry;
+    try {
+      retry = settled.getStatus() != FULFILLED && !settled.isCancelled() && attempts < maxAttempts
+        && retryable.test(settled.cause);
+    } catch (RuntimeException e) {
+      dest.fullFillReject(e);
+      return;
+    }
+    if (!retry) {
+      dest.settleLike(settled);
+      return;
+    }
+    backoff = PromiseTimer.shared().schedule(backoffNanos(initialNanos, maxNanos, attempts),
+                                             () -> dest.scheduler.schedule(this::launch));
+    if (detached) {
+      backoff.cancel();
+    }
+  }
+
+  private void launch() {
+    if (detached) {
+      return;
+    }
+    attempts++;
+    final Promise<T> next;
+    try {
+      next = attempt.get();
+      if (next == null) {
+        throw new NullPointerException("The retried supplier returned no promise");
+      }
+    } catch (RuntimeException e) {
+      dest.fullFillReject(e);
+      return;
+    }
+    current = next;
+    PromiseInstrumentation.dependency(next, dest);
+    next.addDependent(this);
+    if (detached && next.releaseDependent()) {
+      next.cancel();
+    }
+  }
+}
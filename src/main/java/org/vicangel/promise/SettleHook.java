@@ -0,0 +1,18 @@
+package org.vicangel.promise;
+
+/**
+ * Internal bookkeeping reaction that runs on the settling thread instead of going through the scheduler.
+ * Hooks must therefore be short and must never call user code.
+ */
+abstract class SettleHook extends PromiseReaction {
+
+  @Override
+  boolean runsOnSettlingThread() {
+    return true;
+  }
+
+  @Override
+  void submitTo(final PromiseScheduler scheduler) {
+    run();
+  }
+}
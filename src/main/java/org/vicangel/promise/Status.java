@@ -6,5 +6,6 @@ package org.vicangel.promise;
 public enum Status {
   PENDING,
   FULFILLED,
-  REJECTED
+  REJECTED,
+  CANCELLED
 }
@@ -0,0 +1,46 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A counter spread over cache-line padded cells picked by thread, so threads updating it concurrently rarely touch
+ * the same line. Reads sum all cells and are only meant for reporting.
+ */
+final class StripedCounter {
+
+  private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+  /**
+   * Eight longs per cell: one 64-byte cache line.
+   */
+  private static final int STRIDE = 8;
+  private static final int STRIPES = stripes();
+  private final long[] cells = new long[STRIPES * STRIDE];
+
+  void add(final long delta) {
+    CELLS.getAndAdd(cells, index(), delta);
+  }
+
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i < cells.length; i += STRIDE) {
+      sum += (long) CELLS.getVolatile(cells, i);
+    }
+    return sum;
+  }
+
+  void reset() {
+    for (int i = 0; i < cells.length; i += STRIDE) {
+      CELLS.setVolatile(cells, i, 0L);
+    }
+  }
+
+  private static int index() {
+    final long id = Thread.currentThread().getId();
+    return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (STRIPES - 1) * STRIDE;
+  }
+
+  private static int stripes() {
+    return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+  }
+}
@@ -0,0 +1,74 @@
+package org.vicangel.promise;
+
+import java.time.Duration;
+
+import org.vicangel.exceptions.PromiseTimeoutException;
+
+/**
+ * Settle hook behind {@link Promise#timeout(Duration)} and {@link PrimitivePromise#timeout(Duration)}: forwards
+ * the source's outcome to the destination unless the shared timer rejects the destination first. On expiry the
+ * source loses this dependent, so it is cancelled if nothing else is waiting for it, before the destination is
+ * rejected.
+ */
+final class TimeoutHook extends SettleHook implements Detachable {
+
+  private final AbstractPromise src;
+  private final AbstractPromise dest;
+  private volatile PromiseTimer.Timeout timeout;
+  private volatile boolean detached;
+
+  TimeoutHook(final AbstractPromise src, final AbstractPromise dest) {
+    this.src = src;
+    this.dest = dest;
+  }
+
+  /**
+   * Starts the deadline once the hook is registered; a source that already settled leaves nothing to arm.
+   */
+  void arm(final Duration duration) {
+    if (dest.getStatus() == Status.PENDING) {
+      timeout = PromiseTimer.shared().schedule(duration, () -> expire(duration));
+      if (dest.getStatus() != Status.PENDING) {
+        timeout.cancel();
+      }
+    }
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public void run() {
+    if (detached) {
+      return;
+    }
+    final PromiseTimer.Timeout pending = timeout;
+    if (pending != null) {
+      pending.cancel();
+    }
+    dest.settleLike(src);
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    final PromiseTimer.Timeout pending = timeout;
+    if (pending != null) {
+      pending.cancel();
+    }
+    return src.releaseDependent() ? src : null;
+  }
+
+  private void expire(final Duration duration) {
+    if (dest.getStatus() != Status.PENDING) {
+      return;
+    }
+    detached = true;
+    if (src.releaseDependent()) {
+      src.cancel();
+    }
+    dest.fullFillReject(new PromiseTimeoutException(duration));
+  }
+}
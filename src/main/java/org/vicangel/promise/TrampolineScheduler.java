@@ -0,0 +1,94 @@
+package org.vicangel.promise;
+
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * Runs continuations on the thread that hands them over, like {@link DirectScheduler}, but without letting a deep
+ * chain grow the stack. Up to {@code maxDepth} continuations nest directly; past that they are queued on a
+ * per-thread trampoline and run by the outermost frame once the current one returns, so settling the head of a
+ * 10k-link chain costs a bounded stack.
+ * <p>
+ * A single drain runs at most {@code maxBatch} queued continuations. The rest are handed to the fallback scheduler,
+ * so a thread that merely settled a promise, such as the timer thread, is not kept busy by a chain of unbounded length.
+ */
+public final class TrampolineScheduler implements PromiseScheduler {
+
+  public static final int DEFAULT_MAX_DEPTH = 64;
+  public static final int DEFAULT_MAX_BATCH = 1024;
+  public static final TrampolineScheduler INSTANCE =
+    new TrampolineScheduler(DEFAULT_MAX_DEPTH, DEFAULT_MAX_BATCH, task -> PromiseSchedulers.commonPool().schedule(task));
+  private static final Logger LOGGER = Logger.getLogger(TrampolineScheduler.class.getName());
+  private final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+  private final int maxDepth;
+  private final int maxBatch;
+  private final PromiseScheduler fallback;
+
+  public TrampolineScheduler(final int maxDepth, final int maxBatch, final PromiseScheduler fallback) {
+    if (maxDepth < 1 || maxBatch < 1) {
+      throw new IllegalArgumentException("maxDepth and maxBatch must be positive but were " + maxDepth + ", " + maxBatch);
+    }
+    this.maxDepth = maxDepth;
+    this.maxBatch = maxBatch;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void schedule(final Runnable task) {
+    final Frame frame = frames.get();
+    if (frame.depth >= maxDepth) {
+      frame.queue.addLast(task);
+      return;
+    }
+    frame.depth++;
+    try {
+      task.run();
+    } finally {
+      if (--frame.depth == 0 && !frame.queue.isEmpty()) {
+        drain(frame);
+      }
+    }
+  }
+
+  @Override
+  public boolean allowsInline() {
+    return true;
+  }
+
+  /**
+   * Called by the outermost frame only. Queued continuations run one level deep, so they may nest again up to
+   * maxDepth before queueing in turn.
+   */
+  private void drain(final Frame frame) {
+    int budget = maxBatch;
+    Runnable next;
+    while ((next = frame.queue.pollFirst()) != null) {
+      if (budget-- == 0) {
+        handOff(frame, next);
+        return;
+      }
+      frame.depth++;
+      try {
+        next.run();
+      } catch (RuntimeException e) {
+        LOGGER.warning("Task failed on " + Thread.currentThread().getName() + ": " + e);
+      } finally {
+        frame.depth--;
+      }
+    }
+  }
+
+  private void handOff(final Frame frame, final Runnable first) {
+    fallback.schedule(first);
+    Runnable next;
+    while ((next = frame.queue.pollFirst()) != null) {
+      fallback.schedule(next);
+    }
+  }
+
+  private static final class Frame {
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int depth;
+  }
+}
@@ -0,0 +1,84 @@
+package org.vicangel.promise;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Task record created by {@link Promise#then}: the source, the destination and the function, nothing else.
+ * It is only handed to the source's {@link PromiseScheduler} once the source has settled, usually as one entry
+ * of the batch the source drains, so {@link #run()} never blocks.
+ *
+ * @author Nikiforos Xylogiannopoulos
+ */
+final class TransformTask<V, T> extends PromiseReaction implements Detachable {
+
+  private final Promise<V> src;
+  private final Promise<T> dest;
+  private final Function<V, T> func;
+  private final Consumer<Throwable> onReject;
+  /**
+   * Held while the task is pending work of the scope current when then() was called; usually null.
+   */
+  private final PromiseScope.Member ticket;
+  private volatile boolean detached;
+
+  TransformTask(final Promise<V> src,
+                final Promise<T> dest,
+                final Function<V, T> func,
+                final Consumer<Throwable> onReject) {
+    this.src = src;
+    this.dest = dest;
+    this.func = func;
+    this.onReject = onReject;
+    this.ticket = PromiseScope.capture(dest);
+  }
+
+  @Override
+  boolean isLive() {
+    return !detached;
+  }
+
+  @Override
+  public AbstractPromise detach() {
+    detached = true;
+    PromiseScope.release(ticket);
+    return src.releaseDependent() ? src : null;
+  }
+
+  @Override
+  public void run() {
+    if (detached) {
+      return;
+    }
+    PromiseInstrumentation.continuationStarted(this);
+    final PromiseScope previous = PromiseScope.enter(ticket);
+    try {
+      transform(src, dest, func, onReject);
+    } finally {
+      PromiseScope.exit(ticket, previous);
+    }
+  }
+
+  /**
+   * Settles dest from src, which must have settled already. Also used by then() to run the continuation inline,
+   * without creating a reaction at all.
+   */
+  static <V, T> void transform(final Promise<V> src,
+                               final Promise<T> dest,
+                               final Function<V, T> func,
+                               final Consumer<Throwable> onReject) {
+    if (src.isCancelled()) {
+      dest.cancel();
+      return;
+    }
+    try {
+      dest.fullFillResolve(func.apply(src.get()));
+    } catch (Throwable exception) {
+      dest.fullFillReject(exception);
+      if (onReject != null) {
+        onReject.accept(exception);
+      }
+      rethrowIfFatal(exception);
+    }
+  }
+}
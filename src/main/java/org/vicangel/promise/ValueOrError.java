@@ -10,6 +10,9 @@ public interface ValueOrError<V>  {
 
   static class Value<V> implements ValueOrError<V> {
 
+    private static final Value<?> NULL = new Value<>(null);
+    private static final Value<Boolean> TRUE = new Value<>(Boolean.TRUE);
+    private static final Value<Boolean> FALSE = new Value<>(Boolean.FALSE);
     private final V value;
 
     private Value(V value) {
@@ -38,7 +41,18 @@ public interface ValueOrError<V>  {
              '}';
     }
 
-    static <T> ValueOrError<T> of(T t) { return new Value<>(t);}
+    static <T> ValueOrError<T> of(T t) {
+      if (t == null) {
+        return (ValueOrError<T>) NULL;
+      }
+      if (t == Boolean.TRUE) {
+        return (ValueOrError<T>) TRUE;
+      }
+      if (t == Boolean.FALSE) {
+        return (ValueOrError<T>) FALSE;
+      }
+      return new Value<>(t);
+    }
 
   }
 
@@ -0,0 +1,59 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Starts one virtual thread per continuation.
+ * <p>
+ * Virtual threads are looked up reflectively through {@code Thread.startVirtualThread} so that the project still
+ * compiles and runs on runtimes that predate them. There continuations go to the
+ * {@link PromiseSchedulers#commonPool() common worker pool} instead, never to a platform thread of their own.
+ */
+public final class VirtualThreadScheduler implements PromiseScheduler {
+
+  public static final VirtualThreadScheduler INSTANCE = new VirtualThreadScheduler();
+  private static final MethodHandle START_VIRTUAL_THREAD = findStartVirtualThread();
+
+  private VirtualThreadScheduler() {
+
+  }
+
+  public static boolean isSupported() {
+    return START_VIRTUAL_THREAD != null;
+  }
+
+  @Override
+  public void schedule(final Runnable task) {
+    if (START_VIRTUAL_THREAD != null) {
+      try {
+        final Thread ignored = (Thread) START_VIRTUAL_THREAD.invokeExact(task);
+        return;
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    PromiseSchedulers.commonPool().schedule(task);
+  }
+
+  @Override
+  public void scheduleBatch(final Runnable[] tasks) {
+    if (START_VIRTUAL_THREAD == null) {
+      PromiseSchedulers.commonPool().scheduleBatch(tasks);
+      return;
+    }
+    PromiseScheduler.super.scheduleBatch(tasks);
+  }
+
+  private static MethodHandle findStartVirtualThread() {
+    try {
+      return MethodHandles.publicLookup()
+        .findStatic(Thread.class, "startVirtualThread", MethodType.methodType(Thread.class, Runnable.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package org.vicangel.promise;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * A fixed number of worker threads, each with a deque of its own, plus a submission queue for tasks scheduled from
+ * outside the pool.
+ * <p>
+ * A worker pushes the continuations it schedules onto its own deque, guarded by that deque's monitor only, and
+ * takes the most recent one next while it is still warm in cache. Idle workers first look at the submission queue
+ * and then steal the oldest task from another worker's deque. Batches, such as every reaction of a promise with
+ * thousands of dependents, are queued as one entry per helping worker; the helpers then claim chunks of the batch
+ * through a shared cursor instead of queueing each task.
+ * <p>
+ * Workers are daemon threads, so an unused pool never keeps the JVM alive.
+ */
+public class WorkerPoolScheduler implements PromiseScheduler {
+
+  /**
+   * Tasks claimed from a batch at a time: large enough to amortise the claim, small enough to share the batch.
+   */
+  static final int CHUNK = 32;
+  private static final Logger LOGGER = Logger.getLogger(WorkerPoolScheduler.class.getName());
+  /**
+   * Guards the submission queue and is the monitor idle workers wait on.
+   */
+  private final ArrayDeque<Runnable> submissions = new ArrayDeque<>();
+  private final Worker[] workers;
+  /**
+   * Written under the submissions monitor; read without it by workers deciding whether to wake anyone. A worker
+   * about to wait counts itself idle before looking at every deque one last time, and a worker pushing onto its
+   * deque reads the count only after the push, so either the push is seen or the pusher sees the idle worker.
+   */
+  private volatile int idle;
+  private volatile boolean shutdown;
+
+  public WorkerPoolScheduler(final int parallelism) {
+    this(parallelism, "promise-worker");
+  }
+
+  public WorkerPoolScheduler(final int parallelism, final String namePrefix) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive but was " + parallelism);
+    }
+    workers = new Worker[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      workers[i] = new Worker(this, i, namePrefix + "-" + i);
+    }
+    for (Worker worker : workers) {
+      worker.start();
+    }
+  }
+
+  @Override
+  public void schedule(final Runnable task) {
+    push(task, 1);
+  }
+
+  @Override
+  public void scheduleBatch(final Runnable[] tasks) {
+    if (tasks.length == 0) {
+      return;
+    }
+    if (tasks.length == 1) {
+      push(tasks[0], 1);
+      return;
+    }
+    final Batch batch = new Batch(tasks);
+    push(batch, Math.min(workers.length, (tasks.length + CHUNK - 1) / CHUNK));
+  }
+
+  public int getParallelism() {
+    return workers.length;
+  }
+
+  /**
+   * Stops accepting new tasks. Tasks already queued are still run before the workers exit.
+   */
+  public void shutdown() {
+    synchronized (submissions) {
+      shutdown = true;
+      submissions.notifyAll();
+    }
+  }
+
+  /**
+   * Queues the task {@code copies} times; a batch is queued once per worker that should help draining it.
+   */
+  private void push(final Runnable task, final int copies) {
+    if (shutdown) {
+      throw new IllegalStateException("Scheduler has been shut down");
+    }
+    final Worker current = currentWorker();
+    if (current != null) {
+      synchronized (current.tasks) {
+        for (int i = 0; i < copies; i++) {
+          current.tasks.addLast(task);
+        }
+      }
+      if (idle > 0) {
+        synchronized (submissions) {
+          wake(copies);
+        }
+      }
+      return;
+    }
+    synchronized (submissions) {
+      for (int i = 0; i < copies; i++) {
+        submissions.addLast(task);
+      }
+      wake(copies);
+    }
+  }
+
+  /**
+   * Must be called while holding the submissions monitor.
+   */
+  private void wake(final int count) {
+    if (count == 1) {
+      submissions.notify();
+    } else {
+      submissions.notifyAll();
+    }
+  }
+
+  private Worker currentWorker() {
+    final Thread thread = Thread.currentThread();
+    if (thread instanceof Worker && ((Worker) thread).pool == this) {
+      return (Worker) thread;
+    }
+    return null;
+  }
+
+  private Runnable pollSubmission() {
+    synchronized (submissions) {
+      return submissions.pollFirst();
+    }
+  }
+
+  private Runnable steal(final Worker thief) {
+    for (int i = 1; i < workers.length; i++) {
+      final Worker victim = workers[(thief.index + i) % workers.length];
+      final Runnable task;
+      synchronized (victim.tasks) {
+        task = victim.tasks.pollFirst();
+      }
+      if (task != null) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parks the worker until a submission arrives or another worker signals new local work. The wake-up of a worker
+   * pushing locally needs the submissions monitor, so it cannot slip in between the last look and the wait.
+   *
+   * @return false once the pool is shut down and nothing is left to run
+   */
+  private boolean awaitWork() {
+    synchronized (submissions) {
+      if (!submissions.isEmpty()) {
+        return true;
+      }
+      if (shutdown) {
+        return false;
+      }
+      idle++;
+      try {
+        if (!hasLocalWork()) {
+          submissions.wait();
+        }
+      } catch (InterruptedException e) {
+        LOGGER.warning(e.getMessage());
+      } finally {
+        idle--;
+      }
+      return true;
+    }
+  }
+
+  private boolean hasLocalWork() {
+    for (Worker worker : workers) {
+      synchronized (worker.tasks) {
+        if (!worker.tasks.isEmpty()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void runSafely(final Runnable task) {
+    try {
+      task.run();
+    } catch (Throwable e) {
+      // an Error escaping here would end the worker for good, and with it every task left in its deque
+      LOGGER.warning("Task failed on " + Thread.currentThread().getName() + ": " + e);
+    }
+  }
+
+  private static final class Worker extends Thread {
+
+    private final WorkerPoolScheduler pool;
+    private final int index;
+    /**
+     * Guarded by its own monitor. The owner takes from the tail, thieves from the head.
+     */
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    private Worker(final WorkerPoolScheduler pool, final int index, final String name) {
+      super(name);
+      this.pool = pool;
+      this.index = index;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task;
+        synchronized (tasks) {
+          task = tasks.pollLast();
+        }
+        if (task == null) {
+          task = pool.pollSubmission();
+        }
+        if (task == null) {
+          task = pool.steal(this);
+        }
+        if (task != null) {
+          runSafely(task);
+        } else if (!pool.awaitWork()) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Tasks that became ready together. Every worker holding a reference to the batch claims chunks of it through
+   * the cursor until none are left, so the batch is shared without being split up front.
+   */
+  private static final class Batch implements Runnable {
+
+    private static final VarHandle CURSOR;
+    private final Runnable[] tasks;
+    private volatile int cursor;
+
+    static {
+      try {
+        CURSOR = MethodHandles.lookup().findVarHandle(Batch.class, "cursor", int.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    private Batch(final Runnable[] tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    public void run() {
+      int start;
+      while ((start = (int) CURSOR.getAndAdd(this, CHUNK)) < tasks.length) {
+        final int end = Math.min(start + CHUNK, tasks.length);
+        for (int i = start; i < end; i++) {
+          runSafely(tasks[i]);
+        }
+      }
+    }
+  }
+}
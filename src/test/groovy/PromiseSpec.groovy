@@ -1,8 +1,22 @@
+import org.vicangel.exceptions.PromiseCancelledException
+import org.vicangel.exceptions.PromiseChainTrace
+import org.vicangel.exceptions.PromiseRejectException
+import org.vicangel.exceptions.PromiseTimeoutException
 import org.vicangel.promise.*
+import spock.lang.IgnoreIf
 import spock.lang.Specification
+import spock.lang.Timeout
 import spock.util.concurrent.BlockingVariable
 import spock.util.concurrent.BlockingVariables
+import spock.util.concurrent.PollingConditions
 
+import java.lang.ref.WeakReference
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicReference
 import java.util.function.Consumer
 
 class PromiseSpec extends Specification {
@@ -255,4 +269,937 @@ class PromiseSpec extends Specification {
     then:
     result.get() == ["done", 4, "DONE"]
   }
+
+  @IgnoreIf({ VirtualThreadScheduler.isSupported() })
+  def "17-Without virtual threads, continuations reuse pool workers instead of starting a thread each"() {
+    given:
+    Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>())
+    Promise<Integer> source = new Promise<Integer>(new DelayedValue<>(1, 20), VirtualThreadScheduler.INSTANCE)
+
+    when:
+    List<Promise<Integer>> leaves = (1..200).collect { int n ->
+      source.then({ Integer value ->
+        threads.add(Thread.currentThread())
+        value + n
+      })
+    }
+    leaves*.get()
+
+    then:
+    threads.size() <= PromiseSchedulers.commonPool().parallelism
+    threads.every { it.name.startsWith("promise-common") }
+  }
+
+  @Timeout(5)
+  def "18-The default pool keeps a second worker for continuations blocking on get()"() {
+    expect:
+    PromiseSchedulers.commonParallelism(1) == 2
+    PromiseSchedulers.commonPool().getParallelism() >= 2
+
+    when: "a continuation settles a source, then blocks on the continuation of that source"
+    AtomicReference<Consumer<String>> resolveInner = new AtomicReference<>()
+    Promise<String> inner = new Promise<String>({ resolve, reject -> resolveInner.set(resolve) }).then((String str) -> str + "!")
+    Promise<String> outer = new Promise<>(new DelayedValue<>("outer", 10)).then((String str) -> {
+      resolveInner.get().accept("inner")
+      str + " " + inner.get()
+    })
+
+    then:
+    outer.get(Duration.ofSeconds(2)) == "outer inner!"
+  }
+
+  @Timeout(5)
+  def "19-Dependents of a pending promise wait without threads and each runs once, in registration order"() {
+    given:
+    Consumer<Integer> settle = null
+    Promise<Integer> source = new Promise<Integer>({ Consumer<Integer> resolve, Consumer<Throwable> reject ->
+      settle = resolve
+    } as PromiseExecutor<Integer>, DirectScheduler.INSTANCE)
+    List<Integer> runs = Collections.synchronizedList(new ArrayList<Integer>())
+    int threadsBefore = Thread.activeCount()
+
+    when:
+    List<Promise<Integer>> dependents = (1..1000).collect { int n ->
+      source.then({ Integer value ->
+        runs.add(n)
+        value + n
+      })
+    }
+    int threadsWhilePending = Thread.activeCount()
+    List<Thread> registrars = (1..4).collect { int t ->
+      Thread.start {
+        (1..250).each { int n -> source.then({ Integer value -> runs.add(-n) }) }
+      }
+    }
+    registrars*.join()
+    settle.accept(1)
+    settle.accept(2)
+
+    then:
+    threadsWhilePending < threadsBefore + 10
+    dependents*.get() == (1..1000).collect { it + 1 }
+    runs.findAll { it > 0 } == (1..1000).toList()
+    runs.findAll { it < 0 }.size() == 1000
+    (1..250).every { int n -> runs.count(-n) == 4 }
+  }
+
+  @Timeout(5)
+  def "20-Racing settles keep one outcome, and waiters blocked on each branch get that branch's result"() {
+    given:
+    Consumer<Integer> resolve = null
+    Consumer<Throwable> reject = null
+    Promise<Integer> root = new Promise<Integer>({ Consumer<Integer> res, Consumer<Throwable> rej ->
+      resolve = res
+      reject = rej
+    } as PromiseExecutor<Integer>)
+    List<Promise<Integer>> branches = (0..<50).collect { int n -> root.then({ Integer value -> value + n }) }
+    List<Object> seen = Collections.synchronizedList(new ArrayList<Object>(Collections.nCopies(50, null)))
+    List<Thread> waiters = (0..<50).collect { int n ->
+      Thread.start {
+        try {
+          seen.set(n, branches[n].get())
+        } catch (PromiseRejectException e) {
+          seen.set(n, PromiseRejectException.getInitCause(e))
+        }
+      }
+    }
+
+    when:
+    List<Thread> settlers = (1..8).collect { int t ->
+      Thread.start {
+        if (t % 2 == 0) {
+          resolve.accept(t)
+        } else {
+          reject.accept(new IllegalStateException("settler " + t))
+        }
+      }
+    }
+    settlers*.join()
+    waiters*.join()
+    ValueOrError<Integer> outcome = root.getValueOrError()
+
+    then:
+    root.getStatus() != Status.PENDING
+    seen == (0..<50).collect { int n -> outcome.hasError() ? outcome.error() : outcome.value() + n }
+    branches.every { it.getStatus() == root.getStatus() }
+  }
+
+  @Timeout(5)
+  def "21-catchError and andFinally return before the promise settles"() {
+    given:
+    BlockingVariable<Throwable> result = new BlockingVariable<>()
+    Consumer<Throwable> rejectLater = null
+    PromiseExecutor<String> promiseExecutor = (Consumer<String> resolve, Consumer<Throwable> reject) -> {
+      rejectLater = reject
+    }
+    Throwable error = new RuntimeException("ERROR")
+
+    when:
+    Promise<String> promise = new Promise<>(promiseExecutor)
+    promise.andFinally((ValueOrError<String> valueOrError) -> {})
+    promise.catchError((Throwable err) -> {
+      result.set(err)
+    })
+    rejectLater.accept(error)
+
+    then:
+    result.get() == error
+  }
+
+  @Timeout(5)
+  def "22-Promise.all() rejects on the first rejection and leaves the other inputs running"() {
+    given:
+    Promise<String> slow = new Promise<>(new DelayedValue<>("slow", 500))
+    Promise<String> failing = new Promise(new DelayedError(new RuntimeException("Failed"), 20))
+    Promise<Integer> fast = Promise.resolve(1)
+
+    when:
+    Promise.all([slow, failing, fast]).get(Duration.ofSeconds(1))
+
+    then:
+    PromiseRejectException e = thrown()
+    PromiseRejectException.getInitCause(e).getMessage() == "Failed"
+    slow.getStatus() == Status.PENDING
+    slow.get() == "slow"
+    fast.get() == 1
+  }
+
+  def "23-Promise.all() keeps the input order when the inputs settle out of order"() {
+    when:
+    Promise<List<?>> all = Promise.all([
+      new Promise<>(new DelayedValue<>("first", 150)),
+      new Promise<>(new DelayedValue<>("second", 10)),
+      new Promise<>(new DelayedValue<>("third", 80))
+    ])
+
+    then:
+    all.get() == ["first", "second", "third"]
+  }
+
+  @Timeout(5)
+  def "24-Promise.race() is won by a later input settling first, and lets go of the losers"() {
+    given:
+    Promise<String> slow = new Promise<>(new DelayedValue<>("slow", 300))
+    Promise<String> shared = new Promise<>(new DelayedValue<>("shared", 300))
+    Promise<Integer> length = shared.then({ String str -> str.length() })
+    Promise<String> fast = new Promise<>(new DelayedValue<>("fast", 20))
+    Promise<String> never = new Promise<String>({ resolve, reject -> })
+    WeakReference<Promise<String>> neverSettled = new WeakReference<>(never)
+
+    when:
+    Promise<ValueOrError<?>> race = Promise.race([slow, shared, never, fast])
+    never = null
+    ValueOrError<?> winner = race.get()
+
+    then: "the losers are neither cancelled nor kept reachable by the race"
+    winner.value() == "fast"
+    slow.getStatus() == Status.PENDING
+    new PollingConditions(timeout: 2).eventually {
+      System.gc()
+      assert neverSettled.get() == null
+    }
+    race.getStatus() == Status.FULFILLED
+    slow.get() == "slow"
+    length.get() == 6
+  }
+
+  def "25-Cancelling the only dependent cancels the source and aborts its executor"() {
+    given:
+    BlockingVariable<Boolean> aborted = new BlockingVariable<>()
+    PromiseExecutor<String> promiseExecutor = new DelayedValue<String>("DONE", 1000) {
+      @Override
+      void abort() {
+        super.abort()
+        aborted.set(true)
+      }
+    }
+
+    when:
+    Promise<String> promise = new Promise<>(promiseExecutor)
+    Promise<Integer> derived = promise.then((String str) -> str.length())
+    boolean cancelled = derived.cancel()
+
+    then:
+    cancelled && aborted.get() && promise.getStatus() == Status.CANCELLED && derived.getStatus() == Status.CANCELLED
+  }
+
+  @Timeout(5)
+  def "26-Cancelling one promise only aborts its own run of a shared executor"() {
+    given:
+    PromiseExecutor<String> shared = new DelayedValue<>("DONE", 100)
+
+    when:
+    Promise<String> first = new Promise<>(shared)
+    Promise<String> second = new Promise<>(shared)
+    first.cancel()
+
+    then:
+    second.get(Duration.ofSeconds(2)) == "DONE"
+    first.getStatus() == Status.CANCELLED
+  }
+
+  def "27-timeout rejects a promise that does not settle in time"() {
+    given:
+    BlockingVariable<Throwable> result = new BlockingVariable<>()
+    PromiseExecutor<String> delayedString = new DelayedValue<>("DONE", 1000)
+
+    when:
+    new Promise<>(delayedString).timeout(Duration.ofMillis(100)).catchError((Throwable err) -> {
+      result.set(err)
+    })
+
+    then:
+    result.get() instanceof PromiseTimeoutException
+  }
+
+  @Timeout(5)
+  def "28-A timer task throwing an Error does not stop the timer"() {
+    given:
+    PromiseTimer timer = new PromiseTimer("failing-timer")
+    BlockingVariable<String> fired = new BlockingVariable<>(2)
+
+    when:
+    timer.schedule(Duration.ofMillis(10), { throw new AssertionError("broken task") } as Runnable)
+    timer.schedule(Duration.ofMillis(50), { fired.set("after") } as Runnable)
+
+    then:
+    fired.get() == "after"
+  }
+
+  def "29-CountingPromiseListener counts the promises of a chain by outcome"() {
+    given:
+    CountingPromiseListener listener = new CountingPromiseListener()
+    PromiseInstrumentation.install(listener)
+
+    when:
+    Promise<Integer> source = new Promise<Integer>({ Consumer<Integer> resolve, Consumer<Throwable> reject ->
+      resolve.accept(2)
+    } as PromiseExecutor<Integer>, DirectScheduler.INSTANCE)
+    Promise<Integer> doubled = source.then({ Integer value -> value * 2 })
+    Promise<Integer> failed = doubled.then({ Integer value -> throw new IllegalStateException("boom") })
+    failed.catchError({ Throwable t -> }).get()
+
+    then:
+    listener.getCreated() == 4
+    listener.getFulfilled() == 3
+    listener.getRejected() == 1
+    listener.getCancelled() == 0
+
+    cleanup:
+    PromiseInstrumentation.uninstall()
+  }
+
+  def "30-resolve shares constant promises and then runs inline on the direct scheduler"() {
+    given:
+    Promise<Boolean> settled = PromiseSupport.resolve(Boolean.TRUE)
+    PromiseSchedulers.setDefault(DirectScheduler.INSTANCE)
+
+    when:
+    Promise<Boolean> negated = settled.then((Boolean value) -> !value)
+
+    then:
+    PromiseSupport.resolve(Boolean.TRUE).is(settled)
+    negated.getStatus() == Status.FULFILLED && !negated.get()
+
+    cleanup:
+    PromiseSchedulers.setDefault(null)
+  }
+
+  @Timeout(10)
+  def "31-A 10k-link chain settles on the trampoline scheduler without overflowing the stack"() {
+    given:
+    Consumer<Integer> resolveLater = null
+    PromiseExecutor<Integer> promiseExecutor = (Consumer<Integer> resolve, Consumer<Throwable> reject) -> {
+      resolveLater = resolve
+    }
+    Promise<Integer> tail = new Promise<>(promiseExecutor, TrampolineScheduler.INSTANCE)
+    10_000.times {
+      tail = tail.then((Integer value) -> value + 1)
+    }
+
+    when:
+    resolveLater.accept(0)
+
+    then:
+    tail.get() == 10_000
+  }
+
+  def "32-Continuations queued by a trampoline task that throws still run, before any later task"() {
+    given:
+    TrampolineScheduler scheduler = new TrampolineScheduler(1, 16, DirectScheduler.INSTANCE)
+    List<String> ran = []
+
+    when:
+    scheduler.schedule({
+      scheduler.schedule({ ran.add("first") } as Runnable)
+      scheduler.schedule({ ran.add("second") } as Runnable)
+      throw new IllegalStateException("boom")
+    } as Runnable)
+
+    then:
+    IllegalStateException e = thrown()
+    e.getMessage() == "boom"
+    ran == ["first", "second"]
+
+    when:
+    scheduler.schedule({ ran.add("third") } as Runnable)
+
+    then:
+    ran == ["first", "second", "third"]
+  }
+
+  @Timeout(10)
+  def "33-A worker blocked on a continuation it queued itself is helped by the other workers"() {
+    given:
+    WorkerPoolScheduler pool = new WorkerPoolScheduler(2, "blocked-worker")
+
+    when:
+    List<Integer> results = (1..500).collect { int n ->
+      BlockingVariable<Integer> result = new BlockingVariable<>(2)
+      pool.schedule({
+        Promise<Integer> source = new Promise<Integer>({ Consumer<Integer> resolve, Consumer<Throwable> reject ->
+          resolve.accept(n)
+        } as PromiseExecutor<Integer>, pool)
+        result.set(source.then({ Integer value -> value + 1 }).get())
+      } as Runnable)
+      result.get()
+    }
+
+    then:
+    results == (1..500).collect { it + 1 }
+
+    cleanup:
+    pool.shutdown()
+  }
+
+  def "34-A batch scheduled on the worker pool runs every task exactly once"() {
+    given:
+    WorkerPoolScheduler pool = new WorkerPoolScheduler(4, "batch-worker")
+    AtomicIntegerArray runs = new AtomicIntegerArray(1000)
+    CountDownLatch done = new CountDownLatch(1000)
+
+    when:
+    pool.scheduleBatch((0..<1000).collect { int i ->
+      { ->
+        runs.incrementAndGet(i)
+        done.countDown()
+      } as Runnable
+    } as Runnable[])
+
+    then:
+    done.await(2, TimeUnit.SECONDS)
+    (0..<1000).every { int i -> runs.get(i) == 1 }
+
+    cleanup:
+    pool.shutdown()
+  }
+
+  def "35-Tasks queued by a busy worker are stolen by idle workers"() {
+    given:
+    WorkerPoolScheduler pool = new WorkerPoolScheduler(3, "steal-worker")
+    Set<Thread> thieves = Collections.synchronizedSet(new HashSet<Thread>())
+    CountDownLatch stolen = new CountDownLatch(2)
+    BlockingVariable<Thread> owner = new BlockingVariable<>(3)
+    BlockingVariable<Boolean> helped = new BlockingVariable<>(3)
+
+    when:
+    pool.schedule({ ->
+      2.times {
+        pool.schedule({ ->
+          thieves.add(Thread.currentThread())
+          stolen.countDown()
+        } as Runnable)
+      }
+      owner.set(Thread.currentThread())
+      helped.set(stolen.await(2, TimeUnit.SECONDS))
+    } as Runnable)
+
+    then:
+    helped.get()
+    !thieves.contains(owner.get())
+
+    cleanup:
+    pool.shutdown()
+  }
+
+  def "36-Promises derived from a shared constant hand their reactions to the default scheduler as one batch"() {
+    given:
+    List<Runnable> tasks = []
+    List<Runnable[]> batches = []
+    PromiseScheduler recording = new PromiseScheduler() {
+      @Override
+      void schedule(Runnable task) {
+        tasks.add(task)
+      }
+
+      @Override
+      void scheduleBatch(Runnable[] batch) {
+        batches.add(batch)
+      }
+    }
+    PromiseScheduler previous = PromiseSchedulers.getDefault()
+    PromiseSchedulers.setDefault(recording)
+
+    when:
+    Promise<String> derived = Promise.resolve(true).then((Boolean value) -> "derived")
+    (1..3).each { int n -> derived.then((String str) -> str.length() + n) }
+    tasks.remove(0).run()
+
+    then:
+    derived.get() == "derived"
+    tasks.isEmpty()
+    batches*.length == [3]
+
+    cleanup:
+    PromiseSchedulers.setDefault(previous)
+  }
+
+  @Timeout(5)
+  def "37-A continuation throwing an Error rejects its promise and leaves the worker running"() {
+    given:
+    WorkerPoolScheduler single = new WorkerPoolScheduler(1, "error-worker")
+    Promise<String> source = new Promise<>(new DelayedValue<>("DONE", 20), single)
+
+    when:
+    List<Promise<Integer>> dependents = (0..<40).collect { int n ->
+      source.then((String str) -> {
+        if (n % 2 == 0) {
+          throw new AssertionError("broken continuation " + n)
+        }
+        str.length() + n
+      })
+    }
+    dependents.each { it.getValueOrError() }
+
+    then:
+    dependents.withIndex().every { Promise<Integer> dependent, int n ->
+      dependent.getStatus() == (n % 2 == 0 ? Status.REJECTED : Status.FULFILLED)
+    }
+    dependents[0].getValueOrError().error() instanceof AssertionError
+    source.then((String str) -> str.toLowerCase()).get() == "done"
+
+    cleanup:
+    single.shutdown()
+  }
+
+  def "38-Primitive promises chain and aggregate without boxing"() {
+    given:
+    PromiseExecutor<String> delayedString = new DelayedValue<>("DONE", 100)
+
+    when:
+    IntPromise length = new Promise<>(delayedString).thenToInt((String str) -> str.length())
+    IntPromise plusTen = length.then((int value) -> value + 10)
+    Promise<int[]> both = PromiseSupport.allInt([length, plusTen])
+
+    then:
+    plusTen.getAsInt() == 14
+    both.get() == [4, 14] as int[]
+  }
+
+  @Timeout(5)
+  def "39-Primitive promises recover, time out and keep the async trace of their chain"() {
+    given:
+    AsyncTrace.enable(1)
+    Throwable handled = null
+    Promise<String> stuck = new Promise<String>({ Consumer<String> resolve, Consumer<Throwable> reject ->
+    } as PromiseExecutor<String>)
+
+    when:
+    IntPromise failed = Promise.resolve("abc").thenToInt({ String str -> throw new IllegalStateException("boom") })
+    IntPromise recovered = failed.catchError({ Throwable t -> handled = t })
+    IntPromise late = stuck.thenToInt({ String str -> str.length() }).timeout(Duration.ofMillis(50))
+
+    then:
+    recovered.getAsInt() == 0
+    PromiseRejectException.getInitCause(handled).getMessage() == "boom"
+
+    when:
+    failed.getAsInt()
+
+    then:
+    PromiseRejectException rejected = thrown()
+    rejected.cause.suppressed.any { it instanceof PromiseChainTrace }
+
+    when:
+    late.getAsInt()
+
+    then:
+    PromiseRejectException timedOut = thrown()
+    timedOut.cause instanceof PromiseTimeoutException
+    stuck.getStatus() == Status.CANCELLED
+
+    cleanup:
+    AsyncTrace.disable()
+  }
+
+  def "40-Settled promises build their outcome from the result fields on demand"() {
+    given:
+    Promise<String> fulfilled = Promise.resolve("done")
+    Promise<Void> rejected = Promise.reject(new IllegalStateException("failed"))
+    Promise<String> cancelled = new Promise<String>({ Consumer<String> resolve, Consumer<Throwable> reject ->
+    } as PromiseExecutor<String>)
+    cancelled.cancel()
+
+    when:
+    ValueOrError<String> value = fulfilled.getValueOrError()
+    ValueOrError<Void> error = rejected.getValueOrError()
+    List<ValueOrError<?>> settled = Promise.allSettled([fulfilled, rejected, cancelled]).get()
+
+    then:
+    !value.hasError()
+    value.value() == "done"
+    value.error() == null
+    error.hasError()
+    error.error().getMessage() == "failed"
+    settled*.hasError() == [false, true, true]
+    settled[0].value() == "done"
+    settled[1].error().is(error.error())
+    settled[2].error() instanceof PromiseCancelledException
+    fulfilled.get() == "done"
+  }
+
+  def "41-Cache shares in-flight loads and does not keep rejections"() {
+    given:
+    int loads = 0
+    PromiseCache<String, Integer> cache = new PromiseCache<>({ String key ->
+      synchronized (this) {
+        loads++
+      }
+      key.startsWith("bad") ? new Promise(new DelayedError(new IllegalStateException(key), 50))
+                            : new Promise<Integer>(new DelayedValue<>(key.length(), 50))
+    }, 100, Duration.ofMinutes(1))
+
+    when:
+    List<Promise<Integer>> shared = (1..10).collect { cache.get("DONE") }
+    cache.get("bad").getValueOrError()
+    cache.get("bad").getValueOrError()
+
+    then:
+    shared*.get() == [4] * 10
+    loads == 3
+    cache.size() == 1
+  }
+
+  def "42-Cache never holds more than maximumSize entries"() {
+    given:
+    PromiseCache<Integer, Integer> cache = new PromiseCache<>({ Integer key -> Promise.resolve(key) }, 10,
+      Duration.ofMinutes(1))
+
+    when:
+    (0..<1000).each { int key -> cache.get(key).get() }
+
+    then:
+    cache.size() <= 10
+    cache.get(999).get() == 999
+  }
+
+  def "43-mapLimit keeps the order and never exceeds the limit"() {
+    given:
+    int running = 0
+    int peak = 0
+
+    when:
+    Promise<List<Integer>> doubled = PromiseSupport.mapLimit(1..20, 3, { Integer value ->
+      synchronized (this) {
+        peak = Math.max(peak, ++running)
+      }
+      new Promise<Integer>(new DelayedValue<>(value * 2, 10)).then({ Integer result ->
+        synchronized (this) {
+          running--
+        }
+        result
+      })
+    })
+
+    then:
+    doubled.get() == (1..20).collect { it * 2 }
+    peak <= 3
+  }
+
+  def "44-Stream pulls only the elements it needs"() {
+    given:
+    int pulled = 0
+    PromiseStream<Integer> naturals = PromiseStream.generate({
+      new Promise<Optional<Integer>>(new DelayedValue<>(Optional.of(pulled++), 5))
+    })
+
+    when:
+    List<List<Integer>> chunks = naturals.filter({ Integer value -> value % 2 == 0 })
+      .map({ Integer value -> value * 10 })
+      .take(5)
+      .buffer(2)
+      .toList()
+      .get()
+
+    then:
+    chunks == [[0, 20], [40, 60], [80]]
+    pulled == 9
+  }
+
+  @Timeout(5)
+  def "45-flatMap only delivers a mapped promise once its outcome is published"() {
+    given: "a mapped promise caught between claiming its status and publishing its value"
+    Promise<Integer> claimed = new Promise<Integer>({ resolve, reject -> })
+    claimed.claim(Status.FULFILLED)
+
+    when:
+    Promise<Optional<Integer>> first = PromiseStream.fromIterable([1]).flatMap({ Integer n -> claimed }, 1).next()
+    Thread.sleep(100)
+
+    then:
+    first.getStatus() == Status.PENDING
+
+    when:
+    claimed.@result = 7
+    claimed.publish(Status.FULFILLED)
+
+    then:
+    first.get() == Optional.of(7)
+  }
+
+  def "46-Retry backs off on the timer and hedge cancels the slower attempt"() {
+    given:
+    int attempts = 0
+    Promise<String> slow = new Promise<>(new DelayedValue<>("SLOW", 5000))
+    boolean hedged = false
+
+    when:
+    Promise<String> retried = PromiseSupport.retry({
+      ++attempts < 3 ? new Promise(new DelayedError(new IllegalStateException("flaky"), 5))
+                     : new Promise<String>(new DelayedValue<>("DONE", 5))
+    }, 5, Duration.ofMillis(10))
+    Promise<String> fastest = PromiseSupport.hedge({
+      if (hedged) {
+        return new Promise<String>(new DelayedValue<>("HEDGE", 10))
+      }
+      hedged = true
+      slow
+    }, Duration.ofMillis(50))
+
+    then:
+    retried.get() == "DONE"
+    attempts == 3
+    fastest.get() == "HEDGE"
+    slow.isCancelled()
+  }
+
+  @Timeout(5)
+  def "47-A hedged copy launched after the result was decided is only cancelled if nobody else waits for it"() {
+    given:
+    Promise<String> primary = new Promise<>(new DelayedValue<>("primary", 2000))
+    Promise<String> shared = new Promise<>(new DelayedValue<>("shared", 1000))
+    Promise<Integer> length = shared.then({ String str -> str.length() })
+    BlockingVariable<Promise<String>> result = new BlockingVariable<>(1)
+    AtomicInteger calls = new AtomicInteger()
+
+    when:
+    result.set(PromiseSupport.hedge({
+      if (calls.getAndIncrement() == 0) {
+        return primary
+      }
+      result.get().cancel()
+      return shared
+    }, Duration.ofMillis(20)))
+
+    then:
+    new PollingConditions(timeout: 1).eventually {
+      assert calls.get() == 2
+      assert result.get().isCancelled()
+      assert primary.isCancelled()
+    }
+    shared.getStatus() == Status.PENDING
+    length.get() == 6
+  }
+
+  def "48-Sequencer runs the tasks of one key in order and prunes idle keys"() {
+    given:
+    KeyedSequencer<String> sequencer = new KeyedSequencer<>()
+    List<String> log = Collections.synchronizedList([])
+
+    when:
+    List<Promise<String>> submitted = (1..6).collect { int n ->
+      String key = n % 2 == 0 ? "even" : "odd"
+      sequencer.submit(key, {
+        log.add(key + n)
+        new Promise<String>(new DelayedValue<>(key + n, 60 - n * 10))
+      })
+    }
+    submitted*.get()
+
+    then:
+    log.findAll { it.startsWith("odd") } == ["odd1", "odd3", "odd5"]
+    log.findAll { it.startsWith("even") } == ["even2", "even4", "even6"]
+    new PollingConditions(timeout: 1).eventually {
+      assert sequencer.activeKeys() == 0
+    }
+  }
+
+  def "49-Lazy promise runs its executor once and only when consumed"() {
+    given:
+    int runs = 0
+    Promise<String> cold = Promise.lazy({ Consumer<String> resolve, Consumer<Throwable> reject ->
+      runs++
+      resolve.accept("DONE")
+    } as PromiseExecutor<String>)
+
+    when:
+    Promise<Integer> length = cold.thenLazy({ String str -> str.length() })
+    int runsBeforeGet = runs
+
+    then:
+    runsBeforeGet == 0
+    length.get() == 4
+    cold.get() == "DONE"
+    runs == 1
+  }
+
+  def "50-Scope fails fast, cancelling the promises still running"() {
+    given:
+    Promise<String> slow = null
+    PromiseScope scope = PromiseScope.open(PromiseScope.Policy.FAIL_FAST, Duration.ofSeconds(5))
+
+    when:
+    try {
+      slow = new Promise<String>(new DelayedValue<>("SLOW", 2000))
+      new Promise(new DelayedError(new IllegalStateException("boom"), 20))
+    } finally {
+      scope.close()
+    }
+
+    then:
+    PromiseRejectException e = thrown()
+    e.cause instanceof IllegalStateException
+    slow.isCancelled()
+    PromiseScope.current() == null
+  }
+
+  @Timeout(5)
+  def "51-Scopes closed out of order or from another thread hand their thread back to the nearest open scope"() {
+    given:
+    PromiseScope root = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+
+    when: "the outer scope is closed before the inner one"
+    PromiseScope outer = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+    PromiseScope inner = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+    outer.close()
+    inner.close()
+    Promise<String> after = new Promise<>(new DelayedValue<>("after", 10))
+
+    then:
+    PromiseScope.current().is(root)
+    after.get() == "after"
+
+    when: "the scopes are closed in order"
+    outer = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+    inner = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+    inner.close()
+    PromiseScope afterInner = PromiseScope.current()
+    Promise<String> owned = new Promise<>(new DelayedValue<>("owned", 50))
+    outer.close()
+
+    then:
+    afterInner.is(outer)
+    owned.getStatus() == Status.FULFILLED
+    PromiseScope.current().is(root)
+
+    when: "a scope is closed by another thread"
+    PromiseScope foreign = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+    Thread.start { foreign.close() }.join()
+    Promise<String> later = new Promise<>(new DelayedValue<>("later", 10))
+
+    then:
+    PromiseScope.current().is(root)
+    later.get() == "later"
+
+    cleanup:
+    root.close()
+  }
+
+  @Timeout(5)
+  def "52-A scope waits for primitive continuations and the promises they start"() {
+    given:
+    List<Promise<String>> started = Collections.synchronizedList([])
+    PromiseScope scope = PromiseScope.open(PromiseScope.Policy.JOIN_ALL)
+
+    when:
+    Promise<String> source = new Promise<>(new DelayedValue<>("abc", 30))
+    IntPromise length = source.thenToInt({ String str ->
+      started.add(new Promise<String>(new DelayedValue<>("inner", 100)))
+      str.length()
+    })
+    scope.close()
+
+    then:
+    length.getStatus() == Status.FULFILLED
+    started*.getStatus() == [Status.FULFILLED]
+  }
+
+  def "53-Semaphore grants permits in FIFO order and drops cancelled waiters"() {
+    given:
+    AsyncSemaphore semaphore = new AsyncSemaphore(1)
+    List<String> granted = Collections.synchronizedList([])
+
+    when:
+    semaphore.acquire().get()
+    Promise<Void> first = semaphore.acquire()
+    Promise<Void> cancelled = semaphore.acquire()
+    Promise<Void> last = semaphore.acquire()
+    Promise<Void> late = semaphore.acquire(Duration.ofMillis(20))
+    first.then({ granted.add("first") })
+    last.then({ granted.add("last") })
+    cancelled.cancel()
+    late.get()
+
+    then:
+    PromiseRejectException e = thrown()
+    e.cause instanceof PromiseTimeoutException
+    e.cause.getMessage() == "Promise did not settle within PT0.02S"
+    semaphore.getQueueLength() == 2
+
+    when:
+    semaphore.release()
+    first.get()
+    semaphore.release()
+    last.get()
+
+    then:
+    new PollingConditions(timeout: 1).eventually {
+      assert granted == ["first", "last"]
+    }
+    semaphore.availablePermits() == 0
+    semaphore.getQueueLength() == 0
+  }
+
+  def "54-Async trace attaches the creation sites of a rejected chain"() {
+    given:
+    AsyncTrace.enable(1)
+    Promise<Integer> source = new Promise<Integer>(new DelayedValue<>(1, 20))
+
+    when:
+    Throwable error = source
+      .then({ Integer value -> value + 1 })
+      .then({ Integer value -> throw new IllegalStateException("bad " + value) })
+      .getValueOrError()
+      .error()
+    Throwable root = PromiseRejectException.getInitCause(error)
+
+    then:
+    root.message == "bad 2"
+    PromiseChainTrace trace = root.suppressed.find { it instanceof PromiseChainTrace }
+    trace.stackTrace.length > 0
+    trace.stackTrace.every { !it.className.startsWith("org.vicangel.promise.") }
+
+    cleanup:
+    AsyncTrace.disable()
+  }
+
+  def "55-Async trace attaches one chain per reason and keeps long chains bounded"() {
+    given:
+    AsyncTrace.enable(1)
+    IllegalStateException shared = new IllegalStateException("shared")
+
+    when: "one reason rejects two traced chains"
+    List<Promise<Integer>> chains = (0..<2).collect {
+      new Promise<Integer>(new DelayedValue<>(1, 10)).then({ Integer value -> throw shared })
+    }
+    chains*.getValueOrError()
+
+    then:
+    shared.suppressed.findAll { it instanceof PromiseChainTrace }.size() == 1
+
+    when: "a chain grows far longer than the trace shows"
+    Promise<Integer> tail = new Promise<Integer>(new DelayedValue<>(0, 10))
+    (1..200).each { tail = tail.then({ Integer value -> value + 1 }) }
+
+    then:
+    tail.get() == 200
+    tail.@site.@depth <= 64
+
+    cleanup:
+    AsyncTrace.disable()
+  }
+
+  def "56-Watchdog reports stalled promises and exports their dependency graph"() {
+    given:
+    PromiseWatchdog watchdog = new PromiseWatchdog()
+    PromiseInstrumentation.install(watchdog)
+    Promise<String> stuck = new Promise<String>({ Consumer<String> resolve, Consumer<Throwable> reject ->
+    } as PromiseExecutor<String>)
+    Promise<Integer> length = stuck.then({ String str -> str.length() })
+    File dot = File.createTempFile("promises", ".dot")
+
+    when:
+    Thread.sleep(50)
+    List<AbstractPromise> stalled = watchdog.findStalled(Duration.ofMillis(20))
+    watchdog.exportDot(dot.toPath())
+
+    then:
+    stalled == [stuck, length]
+    dot.text.contains("->")
+
+    cleanup:
+    stuck.cancel()
+    PromiseInstrumentation.uninstall()
+    dot.delete()
+  }
 }